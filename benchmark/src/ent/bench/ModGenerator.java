@@ -0,0 +1,189 @@
+package ent.bench;
+
+import arc.files.*;
+import arc.struct.*;
+import ent.anno.proc.*;
+import ent.anno.proc.EntityIO.*;
+
+import java.util.*;
+
+/**
+ * Generates synthetic mod sources for {@link ProcessorBenchmark}. Components form chains of the configured dependency
+ * depth, each entity definition is a leaf component over a few of them, and {@code @Insert}/{@code @Wrap} methods are
+ * spread across the components. A stand-in for vanilla's {@code EntityComp} is generated into the fetch package, so no
+ * vanilla sources have to be fetched.
+ * @author GlFolker
+ */
+public class ModGenerator{
+    public static final String
+        compPackage = "bench.entities.comp",
+        genPackage = "bench.gen",
+        fetchPackage = "bench.fetched";
+
+    /** Amount of components, excluding entity definitions. */
+    public int components = 64;
+    /** Length of each component dependency chain. */
+    public int depth = 4;
+    /** Amount of fields declared by each component. */
+    public int fields = 4;
+    /** Amount of entity definitions. */
+    public int defs = 16;
+    /** Amount of components included by each entity definition. */
+    public int defComponents = 3;
+    /** Total amount of {@code @Insert} and {@code @Wrap} methods. */
+    public int inserts = 8, wraps = 4;
+    /** Amount of previous revisions of each entity definition. */
+    public int revisions = 3;
+    /** Seed used to pick components of entity definitions. */
+    public long seed = 0x454e5449L;
+
+    /** Writes the sources into {@code srcDir} and the revision history into {@code revisionDir}. */
+    public void generate(Fi srcDir, Fi revisionDir){
+        srcDir.child(fetchPackage.replace('.', '/')).child("EntityComp.java").writeString(entityComp());
+
+        var compDir = srcDir.child(compPackage.replace('.', '/'));
+        for(int i = 0; i < components; i++) compDir.child("C" + i + "Comp.java").writeString(component(i));
+
+        var rand = new Random(seed);
+        for(int i = 0; i < defs; i++) compDir.child("D" + i + "Comp.java").writeString(definition(i, rand));
+
+        if(revisions > 0){
+            var store = new RevisionStore(null, revisionDir, null);
+            for(int i = 0; i < defs; i++){
+                for(int rev = 0; rev < revisions; rev++){
+                    // Each revision drops one more field, so the current one always gets added as a new revision.
+                    Seq<RevisionField> revFields = new Seq<>();
+                    for(int f = 0; f < Math.max(fields - revisions + rev, 0); f++) revFields.add(new RevisionField("d" + i + "f" + f, "float"));
+
+                    store.add("D" + i, new Revision(rev, revFields));
+                }
+            }
+
+            store.flush();
+        }
+    }
+
+    protected String entityComp(){
+        return String.format("""
+            package %s;
+
+            import arc.util.io.*;
+            import ent.anno.Annotations.*;
+            import mindustry.gen.*;
+
+            @EntityComponent(vanilla = true)
+            @EntityBaseComponent
+            abstract class EntityComp{
+                private transient boolean added;
+                transient int id = EntityGroup.nextId();
+
+                boolean isAdded(){
+                    return added;
+                }
+
+                void update(){}
+
+                void remove(){
+                    added = false;
+                }
+
+                void add(){
+                    added = true;
+                }
+
+                boolean isLocal(){
+                    return false;
+                }
+
+                boolean isRemote(){
+                    return false;
+                }
+
+                boolean isNull(){
+                    return false;
+                }
+
+                <T extends Entityc> T self(){
+                    return (T)this;
+                }
+
+                <T> T as(){
+                    return (T)this;
+                }
+
+                @InternalImpl
+                abstract int classId();
+
+                @InternalImpl
+                abstract boolean serialize();
+
+                @MethodPriority(1)
+                void read(Reads read){
+                    afterRead();
+                }
+
+                void write(Writes write){}
+
+                void afterRead(){}
+
+                void afterAllRead(){}
+            }
+            """, fetchPackage);
+    }
+
+    protected String component(int index){
+        var out = new StringBuilder()
+            .append("package ").append(compPackage).append(";\n\n")
+            .append("import ent.anno.Annotations.*;\n")
+            .append("import mindustry.gen.*;\n")
+            .append("import ").append(genPackage).append(".*;\n\n")
+            .append("@EntityComponent\n")
+            .append("abstract class C").append(index).append("Comp implements ")
+            .append(index % Math.max(depth, 1) == 0 ? "Entityc" : "C" + (index - 1) + "c").append("{\n");
+
+        for(int f = 0; f < fields; f++) out.append("    float c").append(index).append("f").append(f).append(" = ").append(f).append("f;\n");
+
+        out.append("\n    @Override\n    public void update(){\n");
+        for(int f = 0; f < fields; f++) out.append("        c").append(index).append("f").append(f).append(" += 1f;\n");
+        out.append("    }\n");
+
+        out.append("\n    public float sum").append(index).append("(){\n        return 0f");
+        for(int f = 0; f < fields; f++) out.append(" + c").append(index).append("f").append(f);
+        out.append(";\n    }\n");
+
+        for(int i = index; i < inserts; i += components){
+            out.append("\n    @Insert(\"update()\")\n    void insert").append(i).append("(){\n        c").append(index).append("f0 *= 0.5f;\n    }\n");
+        }
+
+        for(int i = index; i < wraps; i += components){
+            out.append("\n    @Wrap(\"update()\")\n    boolean wrap").append(i).append("(){\n        return c").append(index).append("f0 < 1000f;\n    }\n");
+        }
+
+        return out.append("}\n").toString();
+    }
+
+    protected String definition(int index, Random rand){
+        var picked = new IntSet();
+        int count = Math.min(defComponents, components);
+        while(picked.size < count) picked.add(rand.nextInt(components));
+
+        var inters = new StringBuilder();
+        var items = picked.iterator().toArray();
+        items.sort();
+        for(int i = 0; i < items.size; i++) inters.append(i == 0 ? "" : ", ").append("C").append(items.get(i)).append("c");
+
+        var out = new StringBuilder()
+            .append("package ").append(compPackage).append(";\n\n")
+            .append("import ent.anno.Annotations.*;\n")
+            .append("import mindustry.gen.*;\n")
+            .append("import ").append(genPackage).append(".*;\n\n")
+            .append("@EntityComponent\n")
+            .append("@EntityDef({D").append(index).append("c.class");
+
+        for(int i = 0; i < items.size; i++) out.append(", C").append(items.get(i)).append("c.class");
+        out.append("})\nabstract class D").append(index).append("Comp implements ").append(items.isEmpty() ? "Entityc" : inters).append("{\n");
+
+        for(int f = 0; f < fields; f++) out.append("    float d").append(index).append("f").append(f).append(";\n");
+        return out.append("}\n").toString();
+    }
+}
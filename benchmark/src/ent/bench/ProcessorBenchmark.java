@@ -0,0 +1,283 @@
+package ent.bench;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.Log.*;
+import ent.anno.proc.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.*;
+import javax.lang.model.element.*;
+import javax.tools.*;
+import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * Runs {@link EntityProcessor} over a {@linkplain ModGenerator synthetic mod} through the in-process system Java
+ * compiler, and reports processing time, processing rounds, peak heap usage, and generated source size. Compilation is
+ * {@code -proc:only}, so only the processor and the parsing of its outputs are measured. Runs entirely offline.
+ * <p>
+ * Arguments are {@code --key=value} pairs: {@code components}, {@code depth}, {@code fields}, {@code defs},
+ * {@code defComponents}, {@code inserts}, {@code wraps}, {@code revisions}, {@code seed} configure the generator;
+ * {@code warmup}, {@code iterations}, {@code parallel}, {@code warmCache}, {@code verbose}, and {@code dir} configure
+ * the runs.
+ * @author GlFolker
+ */
+public class ProcessorBenchmark{
+    public final ModGenerator generator = new ModGenerator();
+    public int warmup = 2, iterations = 5;
+    public boolean parallel, warmCache, verbose;
+    public Fi dir = Fi.get("build/benchmark");
+
+    protected Fi srcDir, revisionDir;
+    protected Seq<File> sources;
+
+    public static void main(String[] args){
+        var bench = new ProcessorBenchmark();
+        for(var arg : args){
+            int split = arg.indexOf('=');
+            if(!arg.startsWith("--") || split == -1) throw new IllegalArgumentException("Expected `--key=value`, got `" + arg + "`.");
+
+            var key = arg.substring(2, split);
+            var value = arg.substring(split + 1);
+            switch(key){
+                case "components" -> bench.generator.components = Integer.parseInt(value);
+                case "depth" -> bench.generator.depth = Integer.parseInt(value);
+                case "fields" -> bench.generator.fields = Integer.parseInt(value);
+                case "defs" -> bench.generator.defs = Integer.parseInt(value);
+                case "defComponents" -> bench.generator.defComponents = Integer.parseInt(value);
+                case "inserts" -> bench.generator.inserts = Integer.parseInt(value);
+                case "wraps" -> bench.generator.wraps = Integer.parseInt(value);
+                case "revisions" -> bench.generator.revisions = Integer.parseInt(value);
+                case "seed" -> bench.generator.seed = Long.parseLong(value);
+                case "warmup" -> bench.warmup = Integer.parseInt(value);
+                case "iterations" -> bench.iterations = Integer.parseInt(value);
+                case "parallel" -> bench.parallel = Boolean.parseBoolean(value);
+                case "warmCache" -> bench.warmCache = Boolean.parseBoolean(value);
+                case "verbose" -> bench.verbose = Boolean.parseBoolean(value);
+                case "dir" -> bench.dir = Fi.get(value);
+                default -> throw new IllegalArgumentException("Unknown option `" + key + "`.");
+            }
+        }
+
+        bench.run();
+    }
+
+    public void run(){
+        dir.deleteDirectory();
+        srcDir = dir.child("src");
+        revisionDir = dir.child("revisions");
+
+        generator.generate(srcDir, revisionDir);
+        sources = srcDir.findAll(f -> f.extEquals("java")).map(Fi::file);
+
+        Log.info("Generated @ sources with @ components, @ entity definitions, @ inserts, @ wraps, and @ revisions each.", sources.size, generator.components, generator.defs, generator.inserts, generator.wraps, generator.revisions);
+
+        var results = new Seq<Result>();
+        for(int i = 0; i < warmup + iterations; i++){
+            boolean measured = i >= warmup;
+            var result = iteration();
+
+            Log.info("@ @: @", measured ? "Iteration" : "Warmup", measured ? i - warmup + 1 : i + 1, result);
+            if(!result.success || result.errors > 0) throw new IllegalStateException("Processing failed with " + result.errors + " error(s); see the log above.");
+            if(measured) results.add(result);
+        }
+
+        if(results.isEmpty()) return;
+
+        var report = new StringBuilder("{\n")
+            .append("  \"components\": ").append(generator.components).append(",\n")
+            .append("  \"depth\": ").append(generator.depth).append(",\n")
+            .append("  \"fields\": ").append(generator.fields).append(",\n")
+            .append("  \"defs\": ").append(generator.defs).append(",\n")
+            .append("  \"inserts\": ").append(generator.inserts).append(",\n")
+            .append("  \"wraps\": ").append(generator.wraps).append(",\n")
+            .append("  \"revisions\": ").append(generator.revisions).append(",\n")
+            .append("  \"parallel\": ").append(parallel).append(",\n")
+            .append("  \"warmCache\": ").append(warmCache).append(",\n")
+            .append("  \"iterations\": [");
+
+        for(int i = 0; i < results.size; i++) report.append(i == 0 ? "\n    " : ",\n    ").append(results.get(i).json());
+        report.append("\n  ]\n}\n");
+
+        var file = dir.child("report.json");
+        file.writeString(report.toString());
+
+        Log.info("Mean: @ms total, @ms processing, @MB peak heap.",
+            Strings.fixed(results.sumf(r -> r.totalNanos / 1_000_000f) / results.size, 1),
+            Strings.fixed(results.sumf(r -> r.processNanos / 1_000_000f) / results.size, 1),
+            Strings.fixed(results.sumf(r -> r.peakHeap / 1048576f) / results.size, 1)
+        );
+        Log.info("Min: @ms total, @ms processing.",
+            Strings.fixed(results.min(r -> r.totalNanos).totalNanos / 1_000_000f, 1),
+            Strings.fixed(results.min(r -> r.processNanos).processNanos / 1_000_000f, 1)
+        );
+        Log.info("Wrote benchmark report to @.", file.absolutePath());
+    }
+
+    protected Result iteration(){
+        var outDir = dir.child("out");
+        var genDir = dir.child("generated");
+        var pendingDir = dir.child("pending");
+        outDir.deleteDirectory();
+        genDir.deleteDirectory();
+        pendingDir.deleteDirectory();
+        outDir.mkdirs();
+        genDir.mkdirs();
+
+        var cacheDir = dir.child("cache");
+        if(!warmCache) cacheDir.deleteDirectory();
+
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        if(compiler == null) throw new IllegalStateException("No system Java compiler; run the benchmark with a JDK.");
+
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        var result = new Result();
+
+        try(var files = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)){
+            var task = compiler.getTask(null, files, diagnostics, List.of(
+                "-proc:only", "-nowarn", "-encoding", "UTF-8",
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", outDir.absolutePath(),
+                "-s", genDir.absolutePath(),
+                "-AmodName=bench",
+                "-AgenPackage=" + ModGenerator.genPackage,
+                "-AfetchPackage=" + ModGenerator.fetchPackage,
+                "-ArevisionDir=" + revisionDir.absolutePath(),
+                "-ApendingRevisionDir=" + pendingDir.absolutePath(),
+                "-AcacheDir=" + cacheDir.absolutePath(),
+                "-Aparallel=" + parallel
+            ), null, files.getJavaFileObjectsFromFiles(sources));
+
+            var processor = new Measured(new EntityProcessor(), result);
+            task.setProcessors(List.of(processor));
+
+            // Per-pool peaks happen at different times, so the total heap usage is sampled instead.
+            System.gc();
+            var memory = ManagementFactory.getMemoryMXBean();
+            var sampler = new Thread(() -> {
+                while(true){
+                    result.peakHeap = Math.max(result.peakHeap, memory.getHeapMemoryUsage().getUsed());
+                    try{
+                        Thread.sleep(1);
+                    }catch(InterruptedException e){
+                        return;
+                    }
+                }
+            }, "heap-sampler");
+            sampler.setDaemon(true);
+
+            // The processor's own logging would otherwise dominate the output.
+            var level = Log.level;
+            if(!verbose) Log.level = LogLevel.err;
+
+            sampler.start();
+            long start = System.nanoTime();
+            try{
+                result.success = task.call();
+            }finally{
+                result.totalNanos = System.nanoTime() - start;
+                Log.level = level;
+
+                sampler.interrupt();
+                sampler.join();
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        for(var diagnostic : diagnostics.getDiagnostics()){
+            if(diagnostic.getKind() == Diagnostic.Kind.ERROR){
+                if(result.errors++ == 0) Log.err("@", diagnostic);
+            }
+        }
+
+        for(var file : genDir.findAll(f -> f.extEquals("java"))){
+            result.generatedFiles++;
+            result.generatedBytes += file.length();
+        }
+
+        return result;
+    }
+
+    /** Delegates to the processor while counting rounds and the time spent in them. */
+    protected static class Measured implements Processor{
+        protected final Processor processor;
+        protected final Result result;
+
+        public Measured(Processor processor, Result result){
+            this.processor = processor;
+            this.result = result;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions(){
+            return processor.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes(){
+            return processor.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion(){
+            return processor.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment env){
+            long start = System.nanoTime();
+            processor.init(env);
+            result.processNanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv){
+            long start = System.nanoTime();
+            try{
+                return processor.process(annotations, roundEnv);
+            }finally{
+                result.processNanos += System.nanoTime() - start;
+                result.rounds++;
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation, ExecutableElement member, String userText){
+            return processor.getCompletions(element, annotation, member, userText);
+        }
+    }
+
+    public static class Result{
+        public boolean success;
+        public long totalNanos, processNanos, peakHeap, generatedBytes;
+        public int rounds, errors, generatedFiles;
+
+        public String json(){
+            return "{\"success\": " + success +
+                ", \"totalMillis\": " + String.format(Locale.ROOT, "%.3f", totalNanos / 1_000_000d) +
+                ", \"processMillis\": " + String.format(Locale.ROOT, "%.3f", processNanos / 1_000_000d) +
+                ", \"rounds\": " + rounds +
+                ", \"peakHeapBytes\": " + peakHeap +
+                ", \"generatedFiles\": " + generatedFiles +
+                ", \"generatedBytes\": " + generatedBytes +
+                ", \"errors\": " + errors + "}";
+        }
+
+        @Override
+        public String toString(){
+            return Strings.format("@ms total, @ms processing, @ rounds, @MB peak heap, @ files (@KB) generated, @ error@",
+                Strings.fixed(totalNanos / 1_000_000f, 1), Strings.fixed(processNanos / 1_000_000f, 1), rounds,
+                Strings.fixed(peakHeap / 1048576f, 1), generatedFiles, Strings.fixed(generatedBytes / 1024f, 1),
+                errors, errors == 1 ? "" : "s"
+            );
+        }
+    }
+}
@@ -9,6 +9,7 @@ plugins{
 val arcVersion: String by project
 val mindustryVersion: String by project
 val javapoetVersion: String by project
+val junitVersion: String by project
 val kotlinVersion: String by project
 
 fun arc(module: String): String{
@@ -103,6 +104,7 @@ allprojects{
 configure(allprojects - project(":downgrader")){
     dependencies{
         annotationProcessor(project(":downgrader"))
+        testAnnotationProcessor(project(":downgrader"))
     }
 }
 
@@ -136,9 +138,40 @@ project(":entity"){
         }
     }
 
+    sourceSets["test"].java.setSrcDirs(listOf(layout.projectDirectory.dir("test")))
     dependencies{
         implementation(mindustry(":core"))
         implementation(javapoet())
+
+        testImplementation(platform("org.junit:junit-bom:$junitVersion"))
+        testImplementation("org.junit.jupiter:junit-jupiter")
+        testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    }
+
+    tasks.test{
+        useJUnitPlatform()
+
+        // The tests run the processor in-process, which accesses compiler internals.
+        jvmArgs((project.property("org.gradle.jvmargs") as String).split(Regex("\\s+")).filter{it.startsWith("--add-opens")})
+    }
+}
+
+project(":benchmark"){
+    dependencies{
+        implementation(project(":entity"))
+        implementation(arc(":arc-core"))
+        implementation(mindustry(":core"))
+    }
+
+    tasks.register<JavaExec>("benchmark"){
+        group = "verification"
+        description = "Runs the entity annotation processor over a synthetic mod; pass options with `--args`."
+
+        mainClass = "ent.bench.ProcessorBenchmark"
+        classpath = sourceSets["main"].runtimeClasspath
+
+        // The processor accesses compiler internals in-process, just like in the Gradle daemon.
+        jvmArgs((project.property("org.gradle.jvmargs") as String).split(Regex("\\s+")).filter{it.startsWith("--add-opens")})
     }
 }
 
@@ -201,6 +234,11 @@ project(":"){
         }
     }
 
+    tasks.jar{
+        // Read by the plugin to register processor artifacts of the same version.
+        manifest.attributes("Implementation-Version" to project.version)
+    }
+
     dependencies{
         implementation(arc(":arc-core"))
         implementation(kotlinPlugin("jvm"))
@@ -14,11 +14,23 @@ import java.util.*;
 import static com.sun.tools.javac.code.Source.Feature.*;
 
 /**
- * Makes users able to use Java 9+ syntactic-sugars while still targeting Java 8.
+ * Makes users able to use Java 9+ syntactic-sugars while still targeting Java 8. The patch is applied once the class is
+ * loaded, either as a javac {@linkplain DowngraderPlugin plugin} or as an annotation processor; the latter supports no
+ * annotation types, so it never takes part in processing rounds and doesn't hinder incremental compilation.
  * @author GlFolker
  */
 public final class Downgrader extends AbstractProcessor{
+    private static boolean patched;
+
     static{
+        patch();
+    }
+
+    /** Lowers the minimum source level of Java 8-compatible language features. Only patches once. */
+    public static synchronized void patch(){
+        if(patched) return;
+        patched = true;
+
         try{
             // Get the trusted private lookup.
             Lookup lookup = Reflect.get(Lookup.class, "IMPL_LOOKUP");
@@ -56,6 +68,6 @@ public final class Downgrader extends AbstractProcessor{
 
     @Override
     public Set<String> getSupportedAnnotationTypes(){
-        return Collections.singleton("*");
+        return Collections.emptySet();
     }
 }
@@ -0,0 +1,25 @@
+package ent.downgrader;
+
+import com.sun.source.util.*;
+
+/**
+ * Applies the {@link Downgrader} patch at compiler startup, before any source is parsed. Started automatically whenever
+ * it's on the processor path, or explicitly with {@code -Xplugin:Downgrader}.
+ * @author GlFolker
+ */
+public final class DowngraderPlugin implements Plugin{
+    @Override
+    public String getName(){
+        return "Downgrader";
+    }
+
+    @Override
+    public void init(JavacTask task, String... args){
+        Downgrader.patch();
+    }
+
+    @Override
+    public boolean autoStart(){
+        return true;
+    }
+}
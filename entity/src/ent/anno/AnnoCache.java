@@ -0,0 +1,76 @@
+package ent.anno;
+
+import arc.func.*;
+import arc.struct.*;
+
+import javax.lang.model.element.*;
+import java.lang.annotation.*;
+import java.util.*;
+
+/**
+ * Bounded cache of annotation instances per element, scoped to a single processing session. Least recently used
+ * elements are evicted once {@link #capacity} is exceeded, and the whole cache is {@linkplain #clear() cleared} when
+ * processing is over, so that no compilation's symbol tables are kept reachable afterward.
+ * @author GlFolker
+ */
+@SuppressWarnings("unchecked")
+public class AnnoCache{
+    private static final Object absent = new Object();
+
+    public final int capacity;
+    public int hits, misses, evictions;
+
+    private final LinkedHashMap<Element, ObjectMap<Class<? extends Annotation>, Object>> entries;
+
+    public AnnoCache(int capacity){
+        if(capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+
+        entries = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Element, ObjectMap<Class<? extends Annotation>, Object>> eldest){
+                if(size() > AnnoCache.this.capacity){
+                    evictions++;
+                    return true;
+                }else{
+                    return false;
+                }
+            }
+        };
+    }
+
+    /** @return The cached annotation, or the one supplied by {@code create} if absent. {@code null}s are cached too. */
+    public synchronized <T extends Annotation> T get(Element e, Class<T> type, Func2<Element, Class<T>, T> create){
+        var map = entries.get(e);
+        if(map == null) entries.put(e, map = new ObjectMap<>());
+
+        var value = map.get(type);
+        if(value != null){
+            hits++;
+        }else{
+            misses++;
+
+            value = create.get(e, type);
+            map.put(type, value == null ? absent : value);
+        }
+
+        return value == absent ? null : (T)value;
+    }
+
+    /** @return The amount of elements currently cached. */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /** Releases all cached elements and resets the statistics. */
+    public synchronized void clear(){
+        entries.clear();
+        hits = misses = evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString(){
+        int total = hits + misses;
+        return "AnnoCache{size=" + entries.size() + "/" + capacity + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", hitRate=" + (total == 0 ? 0 : (hits * 100 / total)) + "%}";
+    }
+}
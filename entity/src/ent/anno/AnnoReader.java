@@ -0,0 +1,485 @@
+package ent.anno;
+
+import arc.func.*;
+import arc.struct.*;
+import arc.util.*;
+import com.sun.tools.javac.code.*;
+import com.sun.tools.javac.code.Attribute.Compound;
+import com.sun.tools.javac.code.Symbol.*;
+import com.sun.tools.javac.code.Type;
+import ent.anno.Annotations.*;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import java.lang.annotation.*;
+import java.util.*;
+
+/**
+ * Reads {@link Annotations} values straight from javac's {@link Compound}s into typed instances, without any reflection
+ * or {@link java.lang.reflect.Proxy} allocation. Default values are resolved from per-annotation-type tables that are built once.
+ * Foreign annotation types fall back to {@link AnnoProxyMaker}.
+ * <p>
+ * The instance classes are written by hand rather than generated, as this module has no build-time generation step of
+ * its own; adding a member to an annotation type fails compilation here until its accessor is added. They share
+ * {@link Instance}, which implements {@link Annotation#equals(Object)}, {@link Annotation#hashCode()}, and
+ * {@link Annotation#toString()} over the compound's values.
+ * @author GlFolker
+ */
+@SuppressWarnings("unchecked")
+public class AnnoReader{
+    private static final ObjectMap<Class<? extends Annotation>, Func<Values, ? extends Annotation>> readers = new ObjectMap<>();
+    /** Member names of each annotation type with a reader, sorted, for the {@link Annotation} contract methods. */
+    private static final ObjectMap<Class<? extends Annotation>, String[]> members = new ObjectMap<>();
+
+    private final ObjectMap<TypeSymbol, ObjectMap<String, Attribute>> defaults = new ObjectMap<>();
+
+    static{
+        marker(TypeIOHandler.class, EntityBaseComponent.class, EntityInterface.class, EntityPoint.class, SyncLocal.class, NoSync.class, Import.class, ReadOnly.class, InternalImpl.class, BypassGroupCheck.class, BreakAll.class);
+
+        reader(EntityComponent.class, EntityComponentImpl::new);
+        reader(EntityDef.class, EntityDefImpl::new);
+        reader(SyncField.class, SyncFieldImpl::new);
+        reader(Replace.class, ReplaceImpl::new);
+        reader(MethodPriority.class, MethodPriorityImpl::new);
+        reader(Remove.class, RemoveImpl::new);
+        reader(Extend.class, ExtendImpl::new);
+        reader(Insert.class, InsertImpl::new);
+        reader(Wrap.class, WrapImpl::new);
+        reader(ExcludeGroups.class, ExcludeGroupsImpl::new);
+    }
+
+    private static <T extends Annotation> void reader(Class<T> type, Func<Values, T> reader){
+        readers.put(type, reader);
+        members(type);
+    }
+
+    @SafeVarargs
+    private static void marker(Class<? extends Annotation>... types){
+        for(var type : types){
+            var instance = new Marker(type);
+            readers.put(type, v -> instance);
+            members(type);
+        }
+    }
+
+    private static void members(Class<? extends Annotation> type){
+        var names = Seq.with(type.getDeclaredMethods()).map(m -> m.getName());
+        members.put(type, names.sort().toArray(String.class));
+    }
+
+    /** @return The annotation instance of the given type on the element, or {@code null} if it's not present. */
+    public <T extends Annotation> T read(Element e, Class<T> type){
+        var compound = compound(e, type);
+        if(compound == null) return null;
+
+        var reader = readers.get(type);
+        return reader == null
+            ? AnnoProxyMaker.generate(compound, type)
+            : (T)reader.get(new Values(compound, defaults(compound.type.tsym)));
+    }
+
+    /** @return The annotation compound of the given type directly present on the element, or {@code null}. */
+    public static @Nullable Compound compound(Element e, Class<? extends Annotation> type){
+        var name = type.getName();
+        for(var compound : ((Symbol)e).getAnnotationMirrors()){
+            if(compound.type.tsym.flatName().contentEquals(name)) return compound;
+        }
+
+        return null;
+    }
+
+    private ObjectMap<String, Attribute> defaults(TypeSymbol type){
+        return defaults.get(type, () -> {
+            ObjectMap<String, Attribute> out = new ObjectMap<>();
+            for(var s : type.getEnclosedElements()){
+                if(s instanceof MethodSymbol m && m.getDefaultValue() != null) out.put(m.name.toString(), m.getDefaultValue());
+            }
+
+            return out;
+        });
+    }
+
+    /** Attribute values of an annotation compound, falling back to the annotation type's defaults. */
+    protected static class Values{
+        public final Compound compound;
+        public final ObjectMap<String, Attribute> defaults;
+
+        public Values(Compound compound, ObjectMap<String, Attribute> defaults){
+            this.compound = compound;
+            this.defaults = defaults;
+        }
+
+        public Attribute get(String name){
+            for(var pair : compound.values){
+                if(pair.fst.name.contentEquals(name)) return pair.snd;
+            }
+
+            var value = defaults.get(name);
+            if(value == null) throw new IllegalArgumentException("No value or default for '" + name + "' in " + compound + ".");
+
+            return value;
+        }
+
+        public boolean bool(String name){
+            return (Boolean)get(name).getValue();
+        }
+
+        public int integer(String name){
+            return (Integer)get(name).getValue();
+        }
+
+        public float floating(String name){
+            return ((Number)get(name).getValue()).floatValue();
+        }
+
+        public String string(String name){
+            return (String)get(name).getValue();
+        }
+
+        public TypeMirror type(String name){
+            return type(get(name));
+        }
+
+        public List<TypeMirror> types(String name){
+            var value = get(name);
+            if(!(value instanceof Attribute.Array arr)) return List.of(type(value));
+
+            List<TypeMirror> out = new ArrayList<>(arr.values.length);
+            for(var e : arr.values) out.add(type(e));
+
+            return out;
+        }
+
+        private static Type type(Attribute value){
+            if(value instanceof Attribute.Class c) return c.classType;
+            if(value instanceof Attribute.UnresolvedClass u) return u.classType;
+
+            throw new IllegalArgumentException("Not a class value: " + value);
+        }
+    }
+
+    /**
+     * Base of the typed instances. Member values are compared as by {@link Annotation#equals(Object)}, with class values
+     * compared by their qualified names, as the classes themselves may not be loadable.
+     */
+    private abstract static class Instance implements Annotation{
+        private final Class<? extends Annotation> type;
+        private final @Nullable Values values;
+
+        private Instance(Class<? extends Annotation> type, @Nullable Values values){
+            this.type = type;
+            this.values = values;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType(){
+            return type;
+        }
+
+        private Object value(String name){
+            return value(values.get(name));
+        }
+
+        private static Object value(Attribute value){
+            if(value instanceof Attribute.Array arr){
+                List<Object> out = new ArrayList<>(arr.values.length);
+                for(var e : arr.values) out.add(value(e));
+
+                return out;
+            }
+
+            if(value instanceof Attribute.Class c) return c.classType.toString();
+            if(value instanceof Attribute.UnresolvedClass u) return u.classType.toString();
+            if(value instanceof Attribute.Enum e) return e.value.name.toString();
+            return value.getValue();
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(this == obj) return true;
+            if(!(obj instanceof Instance other) || type != other.type) return false;
+
+            for(var name : members.get(type)){
+                if(!value(name).equals(other.value(name))) return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode(){
+            int hash = 0;
+            for(var name : members.get(type)) hash += (127 * name.hashCode()) ^ value(name).hashCode();
+
+            return hash;
+        }
+
+        @Override
+        public String toString(){
+            var out = new StringBuilder("@").append(type.getCanonicalName());
+
+            var names = members.get(type);
+            if(names.length > 0){
+                out.append('(');
+                for(int i = 0; i < names.length; i++){
+                    if(i > 0) out.append(", ");
+                    out.append(names[i]).append('=').append(values.get(names[i]));
+                }
+
+                out.append(')');
+            }
+
+            return out.toString();
+        }
+    }
+
+    /** Instance of member-less annotations, which only differ by their {@link #annotationType()}. */
+    private static final class Marker extends Instance implements TypeIOHandler, EntityBaseComponent, EntityInterface, EntityPoint, SyncLocal, NoSync, Import, ReadOnly, InternalImpl, BypassGroupCheck, BreakAll{
+        private Marker(Class<? extends Annotation> type){
+            super(type, null);
+        }
+    }
+
+    private static final class EntityComponentImpl extends Instance implements EntityComponent{
+        private final boolean vanilla, base;
+
+        private EntityComponentImpl(Values v){
+            super(EntityComponent.class, v);
+            vanilla = v.bool("vanilla");
+            base = v.bool("base");
+        }
+
+        @Override
+        public boolean vanilla(){
+            return vanilla;
+        }
+
+        @Override
+        public boolean base(){
+            return base;
+        }
+    }
+
+    private static final class EntityDefImpl extends Instance implements EntityDef{
+        private final List<TypeMirror> value;
+        private final boolean serialize, genIO, pooled, deltaSync, soa;
+        private final int resyncInterval;
+
+        private EntityDefImpl(Values v){
+            super(EntityDef.class, v);
+            value = v.types("value");
+            serialize = v.bool("serialize");
+            genIO = v.bool("genIO");
+            pooled = v.bool("pooled");
+            deltaSync = v.bool("deltaSync");
+            resyncInterval = v.integer("resyncInterval");
+            soa = v.bool("soa");
+        }
+
+        @Override
+        public Class<?>[] value(){
+            throw new MirroredTypesException(value);
+        }
+
+        @Override
+        public boolean serialize(){
+            return serialize;
+        }
+
+        @Override
+        public boolean genIO(){
+            return genIO;
+        }
+
+        @Override
+        public boolean pooled(){
+            return pooled;
+        }
+
+        @Override
+        public boolean deltaSync(){
+            return deltaSync;
+        }
+
+        @Override
+        public int resyncInterval(){
+            return resyncInterval;
+        }
+
+        @Override
+        public boolean soa(){
+            return soa;
+        }
+    }
+
+    private static final class SyncFieldImpl extends Instance implements SyncField{
+        private final boolean value, clamped, half;
+        private final float precision, min, max;
+
+        private SyncFieldImpl(Values v){
+            super(SyncField.class, v);
+            value = v.bool("value");
+            clamped = v.bool("clamped");
+            precision = v.floating("precision");
+            min = v.floating("min");
+            max = v.floating("max");
+            half = v.bool("half");
+        }
+
+        @Override
+        public boolean value(){
+            return value;
+        }
+
+        @Override
+        public boolean clamped(){
+            return clamped;
+        }
+
+        @Override
+        public float precision(){
+            return precision;
+        }
+
+        @Override
+        public float min(){
+            return min;
+        }
+
+        @Override
+        public float max(){
+            return max;
+        }
+
+        @Override
+        public boolean half(){
+            return half;
+        }
+    }
+
+    private static final class ReplaceImpl extends Instance implements Replace{
+        private final int value;
+
+        private ReplaceImpl(Values v){
+            super(Replace.class, v);
+            value = v.integer("value");
+        }
+
+        @Override
+        public int value(){
+            return value;
+        }
+    }
+
+    private static final class MethodPriorityImpl extends Instance implements MethodPriority{
+        private final int value;
+
+        private MethodPriorityImpl(Values v){
+            super(MethodPriority.class, v);
+            value = v.integer("value");
+        }
+
+        @Override
+        public int value(){
+            return value;
+        }
+    }
+
+    private static final class RemoveImpl extends Instance implements Remove{
+        private final TypeMirror value;
+
+        private RemoveImpl(Values v){
+            super(Remove.class, v);
+            value = v.type("value");
+        }
+
+        @Override
+        public Class<?> value(){
+            throw new MirroredTypeException(value);
+        }
+    }
+
+    private static final class ExtendImpl extends Instance implements Extend{
+        private final List<TypeMirror> value;
+        private final boolean any;
+
+        private ExtendImpl(Values v){
+            super(Extend.class, v);
+            value = v.types("value");
+            any = v.bool("any");
+        }
+
+        @Override
+        public Class<?>[] value(){
+            throw new MirroredTypesException(value);
+        }
+
+        @Override
+        public boolean any(){
+            return any;
+        }
+    }
+
+    private static final class InsertImpl extends Instance implements Insert{
+        private final String value;
+        private final TypeMirror block;
+        private final boolean after;
+
+        private InsertImpl(Values v){
+            super(Insert.class, v);
+            value = v.string("value");
+            block = v.type("block");
+            after = v.bool("after");
+        }
+
+        @Override
+        public String value(){
+            return value;
+        }
+
+        @Override
+        public Class<?> block(){
+            throw new MirroredTypeException(block);
+        }
+
+        @Override
+        public boolean after(){
+            return after;
+        }
+    }
+
+    private static final class WrapImpl extends Instance implements Wrap{
+        private final String value;
+        private final TypeMirror block;
+
+        private WrapImpl(Values v){
+            super(Wrap.class, v);
+            value = v.string("value");
+            block = v.type("block");
+        }
+
+        @Override
+        public String value(){
+            return value;
+        }
+
+        @Override
+        public Class<?> block(){
+            throw new MirroredTypeException(block);
+        }
+    }
+
+    private static final class ExcludeGroupsImpl extends Instance implements ExcludeGroups{
+        private final List<TypeMirror> value;
+
+        private ExcludeGroupsImpl(Values v){
+            super(ExcludeGroups.class, v);
+            value = v.types("value");
+        }
+
+        @Override
+        public Class<?>[] value(){
+            throw new MirroredTypesException(value);
+        }
+    }
+}
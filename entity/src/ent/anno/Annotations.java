@@ -3,7 +3,9 @@ package ent.anno;
 import java.lang.annotation.*;
 
 /**
- * Source-level annotations to generate entity classes from components.
+ * Source-level annotations to generate entity classes from components. The processor reads component method bodies and
+ * field initializers from their source trees, so it isn't registered as an incremental processor: every build processes
+ * all components from source.
  * @author GlFolker
  * @author Anuke
  */
@@ -52,6 +54,28 @@ public final class Annotations{
 
         /** @return Whether the class is poolable. */
         boolean pooled() default false;
+
+        /**
+         * @return Whether {@code writeSync()} only sends fields that have changed at any point since they were last sent
+         * whole to the player being synced to, preceded by a bitmask of them. Each player is sent every field the first time the entity reaches them,
+         * and periodically after. The player is the one {@code isSyncHidden(Player)} was last called with, as Mindustry's
+         * entity snapshots do; syncs without one are sent whole. Fields of types that may be mutated in-place are always
+         * sent. Supports at most 64 synced fields.
+         */
+        boolean deltaSync() default false;
+
+        /** @return With {@link #deltaSync()}, every how many syncs to a player all fields are sent to them again. */
+        int resyncInterval() default 30;
+
+        /**
+         * @return Whether the instance {@code float} and {@code int} fields are stored in per-type primitive arrays
+         * instead, making the entity a handle into them. The arrays are public in the generated {@code STORE_}, so systems
+         * may iterate them directly; slots of garbage-collected entities are reused. Fields of generated base classes
+         * aren't affected, and field initializers run in declaration order in an instance initializer. Such types are
+         * single-threaded: creating an entity may grow the arrays, and any access racing with that from another thread,
+         * e.g. while a world loads off the main thread, may be lost.
+         */
+        boolean soa() default false;
     }
 
     /** Indicates that this entities (!) class should be mapped. */
@@ -68,6 +92,22 @@ public final class Annotations{
 
         /** @return True if the field is clamped to 0-1. */
         boolean clamped() default false;
+
+        /**
+         * @return If positive, the field is synced as a fixed-point number in steps of this size within
+         * [{@link #min()}, {@link #max()}], using the smallest of a byte, short, or int that fits. Linear fields are
+         * clamped to the range, while angle fields are wrapped into it.
+         */
+        float precision() default 0f;
+
+        /** @return Lower bound of the fixed-point range. */
+        float min() default 0f;
+
+        /** @return Upper bound of the fixed-point range. */
+        float max() default 0f;
+
+        /** @return Whether the field is synced as a 16-bit half-precision float. Ignored if {@link #precision()} is set. */
+        boolean half() default false;
     }
 
     /** Indicates that a field will not be read from the server when syncing the local player state. */
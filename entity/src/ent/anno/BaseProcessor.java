@@ -1,5 +1,6 @@
 package ent.anno;
 
+import arc.files.*;
 import arc.func.*;
 import arc.struct.*;
 import arc.util.*;
@@ -9,7 +10,7 @@ import com.sun.source.tree.*;
 import com.sun.tools.javac.api.*;
 import com.sun.tools.javac.code.*;
 import com.sun.tools.javac.code.Symbol.*;
-import com.sun.tools.javac.code.Attribute.Compound;
+import com.sun.tools.javac.file.*;
 import com.sun.tools.javac.model.*;
 import com.sun.tools.javac.processing.*;
 import com.sun.tools.javac.tree.*;
@@ -19,10 +20,13 @@ import javax.annotation.processing.*;
 import javax.lang.model.*;
 import javax.lang.model.element.*;
 import javax.lang.model.type.*;
+import javax.tools.*;
 import javax.tools.Diagnostic.*;
 import java.io.*;
 import java.lang.annotation.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
 /**
@@ -31,11 +35,13 @@ import java.util.regex.*;
  */
 @SuppressWarnings("unchecked")
 public abstract class BaseProcessor implements Processor{
-    private static final ObjectMap<Element, ObjectMap<Class<? extends Annotation>, Annotation>> annotations = new ObjectMap<>();
-
     public String modName;
     public String packageName;
     public String packageFetch;
+    public boolean parallel;
+    public AnnoCache annoCache;
+    public AnnoReader annoReader = new AnnoReader();
+    public Timings timings;
 
     public JavacFiler filer;
     public Messager messager;
@@ -48,8 +54,11 @@ public abstract class BaseProcessor implements Processor{
     public JavacProcessingEnvironment procEnv;
     public JavacRoundEnvironment roundEnv;
 
-    protected int round = 0, rounds = 1;
+    protected int round = 0, rounds = 1, errors = 0;
+    protected Charset charset;
     protected long initTime;
+    protected @Nullable Fi reportDir;
+    protected Seq<Generation> generations = new Seq<>();
 
     protected static Pattern genStrip;
 
@@ -71,10 +80,20 @@ public abstract class BaseProcessor implements Processor{
         packageFetch = env.getOptions().get("fetchPackage");
         if(packageFetch == null) throw new IllegalStateException("`fetchPackage` not supplied!");
 
+        parallel = Boolean.parseBoolean(env.getOptions().get("parallel"));
+
+        var cacheSize = env.getOptions().get("annoCacheSize");
+        annoCache = new AnnoCache(cacheSize == null ? 8192 : Integer.parseInt(cacheSize));
+
+        var report = env.getOptions().get("reportDir");
+        reportDir = report == null ? null : Fi.get(report);
+        timings = new Timings(reportDir != null);
+
         genStrip = Pattern.compile(packageName.replace(".", "\\.") + "\\.[^A-Z]*");
 
         filer = procEnv.getFiler();
         messager = procEnv.getMessager();
+        charset = context.get(JavaFileManager.class) instanceof BaseFileManager manager ? Charset.forName(manager.getEncodingName()) : Charset.defaultCharset();
         elements = procEnv.getElementUtils();
         types = procEnv.getTypeUtils();
         trees = JavacTrees.instance(context);
@@ -99,16 +118,95 @@ public abstract class BaseProcessor implements Processor{
             throw new RuntimeException(finalCause);
         }
 
-        if(roundEnv.processingOver()) Log.info("Time taken for @: @s", getClass().getSimpleName(), (Time.millis() - initTime) / 1000f);
+        if(roundEnv.processingOver()){
+            long taken = Time.millis() - initTime;
+            Log.info("Time taken for @: @s", getClass().getSimpleName(), taken / 1000f);
+
+            if(reportDir != null){
+                var file = reportDir.child(getClass().getSimpleName() + ".json");
+                timings.write(file, getClass().getSimpleName(), taken, round);
+
+                Log.info("Wrote processing report to @.", file.absolutePath());
+            }
+            Log.debug("@: @", getClass().getSimpleName(), annoCache);
+
+            // Don't keep this compilation's elements reachable after processing is over.
+            annoCache.clear();
+        }
         return true;
     }
 
     protected void process() throws IOException{}
 
-    protected void write(TypeSpec.Builder builder, Seq<String> imports) throws IOException{
-        builder.superinterfaces.sort(Structs.comparing(TypeName::toString));
-        builder.methodSpecs.sort(Structs.comparing(MethodSpec::toString));
-        builder.fieldSpecs.sort(Structs.comparing(f -> f.name));
+    /** Queues a type to be written in {@link #generate()}; the source is passed to {@code written} afterwards, if any. */
+    protected void generate(TypeSpec.Builder builder, Seq<String> imports, @Nullable Cons<String> written){
+        generations.add(new Generation(builder, imports == null ? null : imports.copy(), written));
+    }
+
+    /**
+     * Renders all queued types, in a fork-join pool if {@link #parallel} is enabled, and writes them through the
+     * {@link Filer} in the order they were queued. Types whose source isn't needed afterwards are streamed straight to
+     * the output when rendered sequentially.
+     */
+    protected void generate() throws IOException{
+        var queued = generations;
+        generations = new Seq<>();
+
+        Seq<ForkJoinTask<String>> tasks = null;
+        if(parallel && queued.size > 1){
+            var pool = ForkJoinPool.commonPool();
+            tasks = queued.map(gen -> pool.submit(() -> render(gen.builder, gen.imports)));
+        }
+
+        for(int i = 0; i < queued.size; i++){
+            var gen = queued.get(i);
+            var name = packageName + "." + name(gen.builder);
+            var origins = gen.builder.originatingElements.toArray(new Element[0]);
+            timings.definition(name(gen.builder));
+
+            if(tasks == null && gen.written == null){
+                write(name, out -> render(gen.builder, gen.imports, out), origins);
+                continue;
+            }
+
+            timings.begin("render");
+            var source = tasks == null ? render(gen.builder, gen.imports) : tasks.get(i).join();
+            timings.end();
+
+            write(name, source, origins);
+            if(gen.written != null) gen.written.get(source);
+        }
+
+        timings.definition(null);
+    }
+
+    protected String write(TypeSpec.Builder builder, Seq<String> imports) throws IOException{
+        timings.begin("render");
+        var source = render(builder, imports);
+        timings.end();
+
+        write(packageName + "." + name(builder), source, builder.originatingElements.toArray(new Element[0]));
+
+        return source;
+    }
+
+    /** Renders a type to its source code. Doesn't access any compiler state, so it's safe to be called concurrently. */
+    protected String render(TypeSpec.Builder builder, Seq<String> imports){
+        var out = new StringBuilder();
+        try{
+            render(builder, imports, out);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toString();
+    }
+
+    /** Renders a type to the given output, splicing the additional imports right after the package declaration. */
+    protected void render(TypeSpec.Builder builder, @Nullable Seq<String> imports, Appendable out) throws IOException{
+        sort(builder.superinterfaces, TypeName::toString);
+        sort(builder.methodSpecs, MethodSpec::toString);
+        sort(builder.fieldSpecs, f -> f.name);
 
         var file = JavaFile.builder(packageName, builder.build())
             .indent("    ")
@@ -116,33 +214,56 @@ public abstract class BaseProcessor implements Processor{
             .build();
 
         if(imports == null || imports.isEmpty()){
-            file.writeTo(filer);
-        }else{
-            imports = imports.map(m -> Seq.with(m.split("\n")).sort().toString("\n"));
-            imports.sort().distinct();
-
-            var rawSource = file.toString();
-            Seq<String> result = new Seq<>();
-            for(var s : rawSource.split("\n", -1)){
-                result.add(s);
-                if(s.startsWith("package ")){
-                    result.add("");
-                    for(var i : imports) result.add(i);
-                }
-            }
+            file.writeTo(out);
+            return;
+        }
 
-            var object = filer.createSourceFile(file.packageName + "." + file.typeSpec.name, file.typeSpec.originatingElements.toArray(new Element[0]));
-            try(var stream = object.openWriter()){
-                stream.write(result.toString("\n"));
-            }
+        imports = imports.map(m -> Seq.with(m.split("\n")).sort().toString("\n"));
+        imports.sort().distinct();
+
+        file.writeTo(new ImportSplicer(out, imports.toString("\n")));
+    }
+
+    /** Stably sorts the list by the given key, which is computed only once per element. */
+    protected static <T> void sort(List<T> list, Func<T, String> key){
+        int size = list.size();
+        if(size < 2) return;
+
+        var items = (T[])list.toArray();
+        var keys = new String[size];
+        var order = new Integer[size];
+        for(int i = 0; i < size; i++){
+            keys[i] = key.get(items[i]);
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+        for(int i = 0; i < size; i++) list.set(i, items[order[i]]);
+    }
+
+    protected void write(String name, String source, Element... originatingElements) throws IOException{
+        write(name, out -> out.write(source), originatingElements);
+    }
+
+    /** Streams a source file through the {@link Filer}. */
+    protected void write(String name, Source source, Element... originatingElements) throws IOException{
+        timings.begin("write");
+
+        var object = filer.createSourceFile(name, originatingElements);
+        try(var stream = new BufferedWriter(new OutputStreamWriter(object.openOutputStream(), charset))){
+            source.writeTo(stream);
         }
+
+        timings.end();
     }
 
     public void err(String message){
+        errors++;
         messager.printMessage(Kind.ERROR, message);
     }
 
     public void err(String message, Element elem){
+        errors++;
         messager.printMessage(Kind.ERROR, message, elem);
     }
 
@@ -211,23 +332,12 @@ public abstract class BaseProcessor implements Processor{
         return false;
     }
 
-    public static <T extends Annotation> T anno(Element e, Class<T> type){
-        if(annotations.containsKey(e)){
-            return (T)annotations.get(e).get(type, () -> createAnno(e, type));
-        }else{
-            ObjectMap<Class<? extends Annotation>, Annotation> map;
-            annotations.put(e, map = new ObjectMap<>());
-
-            T anno;
-            map.put(type, anno = createAnno(e, type));
-
-            return anno;
-        }
+    public <T extends Annotation> T anno(Element e, Class<T> type){
+        return annoCache.get(e, type, annoReader::read);
     }
 
-    private static <T extends Annotation> T createAnno(Element e, Class<T> type){
-        Compound compound = Reflect.invoke(AnnoConstruct.class, e, "getAttribute", new Object[]{type}, Class.class);
-        return compound == null ? null : AnnoProxyMaker.generate(compound, type);
+    public boolean has(Element e, Class<? extends Annotation> type){
+        return AnnoReader.compound(e, type) != null;
     }
 
     public static ClassName spec(Class<?> type){
@@ -282,6 +392,10 @@ public abstract class BaseProcessor implements Processor{
         return e.getSimpleName().toString();
     }
 
+    public static String name(TypeSpec.Builder builder){
+        return Reflect.get(builder, "name");
+    }
+
     public static String name(String canonical){
         return canonical.contains(".") ? canonical.substring(canonical.lastIndexOf('.') + 1) : canonical;
     }
@@ -343,6 +457,67 @@ public abstract class BaseProcessor implements Processor{
         }
     }
 
+    /** Writes a source file's content to the output. */
+    protected interface Source{
+        void writeTo(Writer out) throws IOException;
+    }
+
+    /** Inserts an import block after the leading package declaration of a file, passing everything else through. */
+    protected static class ImportSplicer implements Appendable{
+        protected final Appendable out;
+        protected final String imports;
+        protected @Nullable StringBuilder firstLine = new StringBuilder();
+
+        public ImportSplicer(Appendable out, String imports){
+            this.out = out;
+            this.imports = imports;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException{
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException{
+            if(firstLine == null){
+                out.append(csq, start, end);
+            }else{
+                for(int i = start; i < end; i++) append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException{
+            if(firstLine == null){
+                out.append(c);
+                return this;
+            }
+
+            firstLine.append(c);
+            if(c == '\n'){
+                out.append(firstLine);
+                if(firstLine.indexOf("package ") == 0) out.append('\n').append(imports).append('\n');
+
+                firstLine = null;
+            }
+            return this;
+        }
+    }
+
+    protected static class Generation{
+        public final TypeSpec.Builder builder;
+        public final @Nullable Seq<String> imports;
+        public final @Nullable Cons<String> written;
+
+        public Generation(TypeSpec.Builder builder, Seq<String> imports, Cons<String> written){
+            this.builder = builder;
+            this.imports = imports;
+            this.written = written;
+        }
+    }
+
     @Override
     public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation, ExecutableElement member, String userText){
         return Collections.emptyList();
@@ -363,7 +538,10 @@ public abstract class BaseProcessor implements Processor{
         return Set.of(
             "modName",
             "genPackage",
-            "fetchPackage"
+            "fetchPackage",
+            "parallel",
+            "annoCacheSize",
+            "reportDir"
         );
     }
 }
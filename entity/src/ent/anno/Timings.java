@@ -0,0 +1,126 @@
+package ent.anno;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * Records wall time and allocated bytes of processing phases, both overall and per generated definition, and writes
+ * them as a JSON report. Phases may be nested, in which case the outer phase's numbers include the inner ones.
+ * Only the processing thread is measured; work fanned out to other threads is attributed to the phase waiting on it.
+ * @author GlFolker
+ */
+public class Timings{
+    public final boolean enabled;
+
+    protected final @Nullable com.sun.management.ThreadMXBean threads;
+    protected final OrderedMap<String, Phase> phases = new OrderedMap<>();
+    protected final OrderedMap<String, OrderedMap<String, Phase>> definitions = new OrderedMap<>();
+    protected @Nullable String definition;
+
+    private String[] names = new String[8];
+    private long[] times = new long[8], bytes = new long[8];
+    private int depth;
+
+    public Timings(boolean enabled){
+        this.enabled = enabled;
+
+        com.sun.management.ThreadMXBean threads = null;
+        if(enabled && ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemorySupported()){
+            t.setThreadAllocatedMemoryEnabled(true);
+            threads = t;
+        }
+
+        this.threads = threads;
+    }
+
+    /** Sets the definition that subsequent phases are also attributed to, or {@code null} for none. */
+    public void definition(@Nullable String name){
+        definition = name;
+    }
+
+    public void begin(String phase){
+        if(!enabled) return;
+        if(depth == names.length){
+            names = Arrays.copyOf(names, depth * 2);
+            times = Arrays.copyOf(times, depth * 2);
+            bytes = Arrays.copyOf(bytes, depth * 2);
+        }
+
+        names[depth] = phase;
+        bytes[depth] = allocated();
+        times[depth++] = System.nanoTime();
+    }
+
+    public void end(){
+        if(!enabled) return;
+        if(depth == 0) throw new IllegalStateException("end() without begin().");
+
+        long time = System.nanoTime(), alloc = allocated();
+        var name = names[--depth];
+        names[depth] = null;
+
+        phases.get(name, Phase::new).add(time - times[depth], alloc - bytes[depth]);
+        if(definition != null) definitions.get(definition, OrderedMap::new).get(name, Phase::new).add(time - times[depth], alloc - bytes[depth]);
+    }
+
+    protected long allocated(){
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Writes the recorded phases to the given JSON file. */
+    public void write(Fi file, String processor, long totalMillis, int rounds){
+        if(!enabled) return;
+
+        var out = new StringBuilder("{\n");
+        out.append("  \"processor\": \"").append(processor).append("\",\n");
+        out.append("  \"totalMillis\": ").append(totalMillis).append(",\n");
+        out.append("  \"rounds\": ").append(rounds).append(",\n");
+        out.append("  \"allocationTracking\": ").append(threads != null).append(",\n");
+
+        out.append("  \"phases\": ");
+        write(out, phases, "  ");
+        out.append(",\n");
+
+        out.append("  \"definitions\": {");
+        var keys = definitions.orderedKeys();
+        for(int i = 0; i < keys.size; i++){
+            var key = keys.get(i);
+            out.append(i == 0 ? "\n" : ",\n").append("    \"").append(key).append("\": ");
+            write(out, definitions.get(key), "    ");
+        }
+
+        out.append(keys.isEmpty() ? "}\n" : "\n  }\n").append("}\n");
+        file.writeString(out.toString(), false, "UTF-8");
+    }
+
+    private static void write(StringBuilder out, OrderedMap<String, Phase> phases, String indent){
+        out.append("{");
+
+        var keys = phases.orderedKeys();
+        for(int i = 0; i < keys.size; i++){
+            var phase = phases.get(keys.get(i));
+            out.append(i == 0 ? "\n" : ",\n").append(indent).append("  \"").append(keys.get(i)).append("\": {")
+                .append("\"count\": ").append(phase.count)
+                .append(", \"millis\": ").append(String.format(Locale.ROOT, "%.3f", phase.nanos / 1_000_000d))
+                .append(", \"allocatedBytes\": ").append(phase.bytes)
+                .append("}");
+        }
+
+        out.append(keys.isEmpty() ? "}" : "\n" + indent + "}");
+    }
+
+    public static class Phase{
+        public int count;
+        public long nanos, bytes;
+
+        public void add(long nanos, long bytes){
+            count++;
+            this.nanos += nanos;
+            this.bytes += bytes;
+        }
+    }
+}
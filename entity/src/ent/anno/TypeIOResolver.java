@@ -1,11 +1,18 @@
 package ent.anno;
 
+import arc.files.*;
 import arc.struct.*;
+import arc.util.*;
 import arc.util.io.*;
 import com.sun.tools.javac.code.Symbol.*;
 import ent.anno.Annotations.*;
 import mindustry.io.*;
 
+import javax.tools.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.security.*;
+
 import static ent.anno.BaseProcessor.*;
 import static javax.lang.model.element.Modifier.*;
 import static javax.lang.model.type.TypeKind.*;
@@ -15,39 +22,130 @@ import static javax.lang.model.type.TypeKind.*;
  * @author Anuke
  */
 public class TypeIOResolver{
+    /** Bump whenever the resolution below changes its output for the same handler. */
+    public static final int version = 1;
+
     public static ClassSerializer resolve(BaseProcessor proc){
+        return resolve(proc, null);
+    }
+
+    /**
+     * Resolves serializers of all {@link TypeIOHandler}s and Mindustry's {@link TypeIO}. If {@code cacheDir} is given,
+     * handlers loaded from class files (i.e., from the classpath) have their resolved tables stored there, keyed by a
+     * fingerprint of the class file, and reused as long as it doesn't change. Handlers in the sources being compiled
+     * are always resolved, since their signatures may depend on other sources.
+     */
+    public static ClassSerializer resolve(BaseProcessor proc, @Nullable Fi cacheDir){
         var out = new ClassSerializer(new ObjectMap<>(), new ObjectMap<>(), new ObjectMap<>(), new ObjectMap<>());
+        ClassSymbol w = proc.conv(Writes.class), r = proc.conv(Reads.class);
 
         var handlers = Seq.with(proc.<ClassSymbol>with(TypeIOHandler.class)).add(proc.conv(TypeIO.class));
         for(var handler : handlers){
-            for(var e : handler.getEnclosedElements()){
-                if(!(e instanceof MethodSymbol m)) continue;
-
-                if(is(m, PUBLIC, STATIC)){
-                    var params = m.params;
-                    int size = params.size();
-
-                    if(size == 0) continue;
-                    String sig = fName(handler) + "." + name(m), ret = fixName(m.getReturnType().toString());
-
-                    boolean isVoid = m.getReturnType().getKind() == VOID;
-                    var f = params.get(0).type;
-                    ClassSymbol w = proc.conv(Writes.class), r = proc.conv(Reads.class);
-
-                    if(size == 2 && proc.same(f, w)){
-                        (sig.endsWith("Net") ? out.netWriters : out.writers).put(fixName(params.get(1).type.toString()), sig);
-                    }else if(size == 1 && proc.same(f, r) && !isVoid){
-                        out.readers.put(ret, sig);
-                    }else if(size == 2 && proc.same(f, r) && !isVoid && proc.same(m.getReturnType(), params.get(1).type)){
-                        out.mutatorReaders.put(ret, sig);
-                    }
+            var fingerprint = cacheDir == null ? null : fingerprint(proc, handler);
+            var file = fingerprint == null ? null : cacheDir.child(handler.flatName() + ".typeio");
+
+            var resolved = file == null ? null : read(file, fingerprint);
+            if(resolved == null){
+                resolved = new ClassSerializer(new ObjectMap<>(), new ObjectMap<>(), new ObjectMap<>(), new ObjectMap<>());
+                resolve(proc, handler, w, r, resolved);
+
+                if(file != null) write(file, fingerprint, resolved);
+            }
+
+            out.writers.putAll(resolved.writers);
+            out.readers.putAll(resolved.readers);
+            out.mutatorReaders.putAll(resolved.mutatorReaders);
+            out.netWriters.putAll(resolved.netWriters);
+        }
+
+        return out;
+    }
+
+    protected static void resolve(BaseProcessor proc, ClassSymbol handler, ClassSymbol w, ClassSymbol r, ClassSerializer out){
+        for(var e : handler.getEnclosedElements()){
+            if(!(e instanceof MethodSymbol m)) continue;
+
+            if(is(m, PUBLIC, STATIC)){
+                var params = m.params;
+                int size = params.size();
+
+                if(size == 0) continue;
+                String sig = fName(handler) + "." + name(m), ret = fixName(m.getReturnType().toString());
+
+                boolean isVoid = m.getReturnType().getKind() == VOID;
+                var f = params.get(0).type;
+
+                if(size == 2 && proc.same(f, w)){
+                    (sig.endsWith("Net") ? out.netWriters : out.writers).put(fixName(params.get(1).type.toString()), sig);
+                }else if(size == 1 && proc.same(f, r) && !isVoid){
+                    out.readers.put(ret, sig);
+                }else if(size == 2 && proc.same(f, r) && !isVoid && proc.same(m.getReturnType(), params.get(1).type)){
+                    out.mutatorReaders.put(ret, sig);
                 }
             }
         }
+    }
+
+    /** @return A hash of the handler's class file and everything else the resolution depends on, or {@code null} if it's not loaded from a class file. */
+    protected static @Nullable String fingerprint(BaseProcessor proc, ClassSymbol handler){
+        var classfile = handler.outermostClass().classfile;
+        if(classfile == null || classfile.getKind() != JavaFileObject.Kind.CLASS) return null;
+
+        try(var in = classfile.openInputStream()){
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update((version + "\n" + proc.packageName + "\n" + handler.flatName() + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(in.readAllBytes());
+
+            var hash = new StringBuilder();
+            for(var b : digest.digest()) hash.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+
+            return hash.toString();
+        }catch(IOException | NoSuchAlgorithmException e){
+            Log.debug("Couldn't fingerprint '@': @", handler, e);
+            return null;
+        }
+    }
+
+    protected static @Nullable ClassSerializer read(Fi file, String fingerprint){
+        if(!file.exists()) return null;
+
+        var lines = file.readString("UTF-8").split("\n");
+        if(lines.length == 0 || !lines[0].equals(fingerprint)) return null;
+
+        var out = new ClassSerializer(new ObjectMap<>(), new ObjectMap<>(), new ObjectMap<>(), new ObjectMap<>());
+        for(int i = 1; i < lines.length; i++){
+            var parts = lines[i].split("\t");
+            if(parts.length != 3) return null;
+
+            var map = switch(parts[0]){
+                case "w" -> out.writers;
+                case "r" -> out.readers;
+                case "m" -> out.mutatorReaders;
+                case "n" -> out.netWriters;
+                default -> null;
+            };
+
+            if(map == null) return null;
+            map.put(parts[1], parts[2]);
+        }
 
         return out;
     }
 
+    protected static void write(Fi file, String fingerprint, ClassSerializer serializer){
+        var out = new StringBuilder(fingerprint).append('\n');
+        write(out, "w", serializer.writers);
+        write(out, "r", serializer.readers);
+        write(out, "m", serializer.mutatorReaders);
+        write(out, "n", serializer.netWriters);
+
+        file.writeString(out.toString(), false, "UTF-8");
+    }
+
+    private static void write(StringBuilder out, String kind, ObjectMap<String, String> map){
+        for(var key : map.keys().toSeq().sort()) out.append(kind).append('\t').append(key).append('\t').append(map.get(key)).append('\n');
+    }
+
     public static class ClassSerializer{
         public ObjectMap<String, String> writers, readers, mutatorReaders, netWriters;
 
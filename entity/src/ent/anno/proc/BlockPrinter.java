@@ -0,0 +1,286 @@
+package ent.anno.proc;
+
+import arc.struct.*;
+import arc.util.*;
+import com.sun.tools.javac.tree.*;
+import com.sun.tools.javac.tree.JCTree.*;
+
+import java.io.*;
+
+/**
+ * Prints component method bodies to be appended in generated entity classes in a single pass, rewriting during the tree
+ * traversal:
+ * <ul>
+ *     <li>{@code self()} and {@code this.<T>self()} to {@code this}, except for bare {@code self() instanceof ...}.</li>
+ *     <li>{@code case ... -> yield value;} to {@code case ... -> value;}.</li>
+ *     <li>Inferred variable types, which are absent before attribution, to {@code var}.</li>
+ *     <li>Top-level {@code return;} to {@code break <blockName>;}, if the block name is given.</li>
+ *     <li>Unshadowed {@code x} and {@code this.x} of columns of {@code @EntityDef(soa = true)} types to {@code STORE_.x[INDEX_]}. As
+ *     the tree isn't attributed, shadowing is told by the names of variables declared in enclosing scopes. Inside local
+ *     and anonymous classes, where {@code x} may be an inherited field, only {@code Owner.this.x} is rewritten, where
+ *     {@code Owner} is the component or the entity type.</li>
+ * </ul>
+ * @author GlFolker
+ */
+public class BlockPrinter extends Pretty{
+    protected final @Nullable String blockName;
+    protected final ObjectSet<String> columns;
+    /** Simple names of the classes whose qualified {@code this} refers to the entity. */
+    protected final ObjectSet<String> owners;
+    /** Names of variables declared in the enclosing scopes, innermost last. */
+    protected final Seq<String> locals = new Seq<>();
+
+    protected int innerLevel, classLevel;
+    protected @Nullable JCTree keep, implicitYield, callee;
+
+    public BlockPrinter(Writer out, @Nullable String blockName){
+        this(out, blockName, new ObjectSet<>(), new ObjectSet<>());
+    }
+
+    public BlockPrinter(Writer out, @Nullable String blockName, ObjectSet<String> columns, ObjectSet<String> owners){
+        super(out, true);
+        this.blockName = blockName;
+        this.columns = columns;
+        this.owners = owners;
+    }
+
+    public static String print(JCBlock block, @Nullable String blockName){
+        return print(block, blockName, new ObjectSet<>(), new ObjectSet<>(), Seq.with());
+    }
+
+    /**
+     * Prints the block of a method with the given parameter names, rewriting accesses to the given columns of the entity
+     * whose {@code this} may be qualified with the given owner names.
+     */
+    public static String print(JCBlock block, @Nullable String blockName, ObjectSet<String> columns, ObjectSet<String> owners, Seq<String> params){
+        var writer = new StringWriter();
+        try{
+            var printer = new BlockPrinter(writer, blockName, columns, owners);
+            printer.locals.addAll(params);
+            printer.printStats(block.stats);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+
+        return writer.toString();
+    }
+
+    /** Prints a field initializer, rewriting accesses to the given columns. */
+    public static String print(JCExpression expr, ObjectSet<String> columns, ObjectSet<String> owners){
+        var writer = new StringWriter();
+        try{
+            new BlockPrinter(writer, null, columns, owners).printExpr(expr);
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+
+        return writer.toString();
+    }
+
+    @Override
+    public void printExpr(JCTree tree, int prec) throws IOException{
+        if(tree == null){
+            print("var");
+        }else{
+            super.printExpr(tree, prec);
+        }
+    }
+
+    @Override
+    public void visitClassDef(JCClassDecl tree){
+        int mark = locals.size;
+        innerLevel++;
+        classLevel++;
+        super.visitClassDef(tree);
+        classLevel--;
+        innerLevel--;
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitNewClass(JCNewClass tree){
+        if(tree.def == null){
+            super.visitNewClass(tree);
+        }else{
+            // Anonymous class bodies are printed without going through visitClassDef().
+            int mark = locals.size;
+            innerLevel++;
+            classLevel++;
+            super.visitNewClass(tree);
+            classLevel--;
+            innerLevel--;
+            locals.truncate(mark);
+        }
+    }
+
+    @Override
+    public void visitLambda(JCLambda tree){
+        int mark = locals.size;
+        // Implicitly typed parameters are printed without going through visitVarDef().
+        for(var param : tree.params) locals.add(param.name.toString());
+
+        innerLevel++;
+        super.visitLambda(tree);
+        innerLevel--;
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitMethodDef(JCMethodDecl tree){
+        int mark = locals.size;
+        super.visitMethodDef(tree);
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitBlock(JCBlock tree){
+        int mark = locals.size;
+        super.visitBlock(tree);
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitForLoop(JCForLoop tree){
+        int mark = locals.size;
+        super.visitForLoop(tree);
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitForeachLoop(JCEnhancedForLoop tree){
+        int mark = locals.size;
+        super.visitForeachLoop(tree);
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitTry(JCTry tree){
+        int mark = locals.size;
+        super.visitTry(tree);
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitCatch(JCCatch tree){
+        int mark = locals.size;
+        super.visitCatch(tree);
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitSwitch(JCSwitch tree){
+        int mark = locals.size;
+        super.visitSwitch(tree);
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitSwitchExpression(JCSwitchExpression tree){
+        int mark = locals.size;
+        super.visitSwitchExpression(tree);
+        locals.truncate(mark);
+    }
+
+    @Override
+    public void visitVarDef(JCVariableDecl tree){
+        // Pattern bindings are kept until the enclosing block ends, which may over-approximate their scope.
+        if(!columns.isEmpty()) locals.add(tree.name.toString());
+        super.visitVarDef(tree);
+    }
+
+    @Override
+    public void visitIdent(JCIdent tree){
+        var name = tree.name.toString();
+        if(classLevel == 0 && tree != callee && columns.contains(name) && !locals.contains(name)){
+            column(name);
+        }else{
+            super.visitIdent(tree);
+        }
+    }
+
+    @Override
+    public void visitSelect(JCFieldAccess tree){
+        var name = tree.name.toString();
+        if(columns.contains(name) && (
+            (classLevel == 0 && tree.selected instanceof JCIdent t && t.name.contentEquals("this")) ||
+            (tree.selected instanceof JCFieldAccess f && f.name.contentEquals("this") && f.selected instanceof JCIdent o && owners.contains(o.name.toString()))
+        )){
+            column(name);
+        }else{
+            super.visitSelect(tree);
+        }
+    }
+
+    @Override
+    public void visitReturn(JCReturn tree){
+        if(blockName == null || innerLevel > 0){
+            super.visitReturn(tree);
+        }else{
+            try{
+                print("break ");
+                print(blockName);
+                print(";");
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void visitTypeTest(JCInstanceOf tree){
+        if(tree.expr instanceof JCMethodInvocation m && m.meth instanceof JCIdent && isSelf(m)) keep = m;
+        super.visitTypeTest(tree);
+    }
+
+    @Override
+    public void visitApply(JCMethodInvocation tree){
+        if(tree != keep && isSelf(tree)){
+            try{
+                print("this");
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }else{
+            // Unqualified method names aren't field accesses, even if they're named like one.
+            if(tree.meth instanceof JCIdent) callee = tree.meth;
+            super.visitApply(tree);
+        }
+    }
+
+    @Override
+    public void visitCase(JCCase tree){
+        if(tree.caseKind == JCCase.RULE && tree.stats.size() == 1 && tree.stats.head instanceof JCYield y) implicitYield = y;
+        super.visitCase(tree);
+    }
+
+    @Override
+    public void visitYield(JCYield tree){
+        if(tree != implicitYield){
+            super.visitYield(tree);
+        }else{
+            try{
+                printExpr(tree.value);
+                print(";");
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    protected void column(String name){
+        try{
+            print(EntityIO.ref(columns, "", name));
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected static boolean isSelf(JCMethodInvocation tree){
+        if(!tree.args.isEmpty()) return false;
+        if(tree.meth instanceof JCIdent i) return i.name.contentEquals("self");
+
+        return
+            tree.meth instanceof JCFieldAccess f && f.name.contentEquals("self") &&
+            f.selected instanceof JCIdent t && t.name.contentEquals("this");
+    }
+}
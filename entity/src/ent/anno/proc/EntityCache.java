@@ -0,0 +1,195 @@
+package ent.anno.proc;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+import com.sun.tools.javac.code.*;
+import com.sun.tools.javac.code.Symbol.*;
+import ent.anno.proc.EntityIO.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.security.*;
+
+import static ent.anno.BaseProcessor.*;
+
+/**
+ * Persistent generation cache for entity definitions. Each definition is keyed by a hash of its components' printed
+ * method bodies, field specifications, annotations, and imports; if the hash matches the previous build, the
+ * previously generated source is reused as-is.
+ * @author GlFolker
+ */
+public class EntityCache{
+    /** Bump whenever the generated output changes for the same input. */
+    public static final int version = 1;
+
+    public final EntityProcessor proc;
+    public final Fi directory;
+
+    protected final ObjectMap<ClassSymbol, byte[]> compHashes = new ObjectMap<>();
+    protected final OrderedMap<String, String> pending = new OrderedMap<>();
+    protected byte[] baseHash;
+
+    public EntityCache(EntityProcessor proc, Fi directory){
+        this.proc = proc;
+        this.directory = directory;
+    }
+
+    /** @return The hash key of an entity definition, given its name, defining symbol, resolved components, and revisions. */
+    public String hash(String name, Symbol def, Iterable<ClassSymbol> comps, Seq<Revision> revisions){
+        var digest = digest();
+        digest.update(base());
+
+        update(digest, name);
+        for(var anno : def.getAnnotationMirrors()) update(digest, anno.toString());
+        for(var comp : comps) digest.update(hash(comp));
+
+        for(var rev : revisions){
+            update(digest, String.valueOf(rev.version));
+            for(var field : rev.fields){
+                update(digest, field.name);
+                update(digest, field.type);
+            }
+        }
+
+        return hex(digest.digest());
+    }
+
+    /** @return The cached source of the definition, or {@code null} if the hash doesn't match. */
+    public @Nullable String get(String name, String hash){
+        var file = directory.child(name + ".cache");
+        if(!file.exists()) return null;
+
+        var content = file.readString("UTF-8");
+        int index = content.indexOf('\n');
+
+        return index != -1 && content.substring(0, index).equals(hash) ? content.substring(index + 1) : null;
+    }
+
+    /** Queues a generated definition source to be persisted in {@link #flush()}. */
+    public void put(String name, String hash, String source){
+        pending.put(name, hash + "\n" + source);
+    }
+
+    /** Writes all queued entries. Should only be called if the processing yields no errors. */
+    public void flush(){
+        if(pending.isEmpty()) return;
+
+        directory.mkdirs();
+        for(var e : pending) directory.child(e.key + ".cache").writeString(e.value, false, "UTF-8");
+
+        pending.clear();
+    }
+
+    protected byte[] hash(ClassSymbol comp){
+        return compHashes.get(comp, () -> {
+            var digest = digest();
+            update(digest, fName(comp));
+
+            for(var anno : comp.getAnnotationMirrors()) update(digest, anno.toString());
+            for(var inter : comp.getInterfaces()) update(digest, inter.toString());
+
+            var imports = proc.imports.get(comp);
+            if(imports != null) for(var i : imports) update(digest, i);
+
+            for(var s : comp.getEnclosedElements()){
+                update(digest, s.getKind().name());
+                update(digest, s.getModifiers().toString());
+                for(var anno : s.getAnnotationMirrors()) update(digest, anno.toString());
+
+                if(s instanceof VarSymbol v){
+                    update(digest, v.type.toString());
+                    update(digest, name(v));
+
+                    var init = proc.varInitializers.get(proc.desc(v));
+                    if(init != null) update(digest, init.toString());
+                }else if(s instanceof MethodSymbol m){
+                    update(digest, m.getReturnType().toString());
+                    update(digest, proc.sigName(m));
+                    for(var t : m.getTypeParameters()) update(digest, t.toString());
+                    for(var t : m.getThrownTypes()) update(digest, t.toString());
+
+                    var block = proc.methodBlocks.get(proc.desc(m));
+                    if(block != null) update(digest, block.toString());
+                }else{
+                    update(digest, s.toString());
+                }
+            }
+
+            return digest.digest();
+        });
+    }
+
+    protected byte[] base(){
+        if(baseHash == null){
+            var digest = digest();
+            update(digest, String.valueOf(version));
+            update(digest, proc.packageName);
+
+            // Different processor artifacts may generate different outputs, even from the same path, e.g. a rebuilt or
+            // snapshot jar, so the artifact's content is hashed.
+            var source = EntityCache.class.getProtectionDomain().getCodeSource();
+            if(source != null) update(digest, source.getLocation());
+
+            var serializer = proc.serializer;
+            for(var map : Seq.with(serializer.writers, serializer.readers, serializer.mutatorReaders, serializer.netWriters)){
+                for(var key : map.keys().toSeq().sort()){
+                    update(digest, key);
+                    update(digest, map.get(key));
+                }
+
+                update(digest, "");
+            }
+
+            baseHash = digest.digest();
+        }
+
+        return baseHash;
+    }
+
+    protected static MessageDigest digest(){
+        try{
+            return MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static void update(MessageDigest digest, String value){
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+    }
+
+    /** Hashes the content of a jar file or class directory, or only the location if it's neither. */
+    protected static void update(MessageDigest digest, URL location){
+        Fi file;
+        try{
+            file = "file".equals(location.getProtocol()) ? new Fi(new File(location.toURI())) : null;
+        }catch(URISyntaxException | IllegalArgumentException e){
+            file = null;
+        }
+
+        if(file == null || !file.exists()){
+            update(digest, String.valueOf(location));
+        }else if(file.isDirectory()){
+            var root = file;
+            var children = file.findAll();
+            children.sortComparing(Fi::path);
+
+            for(var child : children){
+                update(digest, child.path().substring(root.path().length()));
+                digest.update(child.readBytes());
+            }
+        }else{
+            digest.update(file.readBytes());
+        }
+    }
+
+    protected static String hex(byte[] bytes){
+        var builder = new StringBuilder(bytes.length * 2);
+        for(var b : bytes) builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+
+        return builder.toString();
+    }
+}
@@ -13,6 +13,8 @@ import ent.anno.TypeIOResolver.*;
 import mindustry.*;
 import mindustry.ctype.*;
 
+import javax.lang.model.element.*;
+
 import static ent.anno.BaseProcessor.*;
 import static javax.lang.model.element.Modifier.*;
 
@@ -22,17 +24,26 @@ import static javax.lang.model.element.Modifier.*;
  */
 public class EntityIO{
     public static final Json json = new Json();
-    public static final String targetSuffix = "_TARGET_", lastSuffix = "_LAST_";
+    protected static final ClassName player = ClassName.get("mindustry.gen", "Player");
+    public static final String targetSuffix = "_TARGET_", lastSuffix = "_LAST_", storeField = "STORE_", indexField = "INDEX_";
     public static final StringMap refactors = StringMap.of("mindustry.entities.units.BuildRequest", "mindustry.entities.units.BuildPlan");
 
     public final BaseProcessor proc;
     public final ClassSerializer serializer;
+    public final Codecs codecs;
     public final String name;
     public final TypeSpec.Builder type;
-    public final Fi directory;
+    public final RevisionStore store;
     public final Seq<Revision> revisions = new Seq<>();
 
     public ObjectSet<String> presentFields = new ObjectSet<>();
+    /** Fields stored in the entity type's {@linkplain EntityDef#soa() columns}. */
+    public ObjectSet<String> columns = new ObjectSet<>();
+    /** Synced fields of the latest revision in bitmask order, if {@linkplain #delta(int, ObjectMap) delta sync} is enabled. */
+    public @Nullable Seq<RevisionField> deltaFields;
+    protected int resyncInterval;
+    protected boolean hasHalfHelpers;
+    protected ObjectMap<String, TypeName> fieldTypes = new ObjectMap<>();
     protected boolean write;
     protected MethodSpec.Builder method;
 
@@ -40,18 +51,15 @@ public class EntityIO{
         json.setIgnoreUnknownFields(true);
     }
 
-    public EntityIO(BaseProcessor proc, String name, TypeSpec.Builder type, Seq<FieldSpec> typeFields, ClassSerializer serializer, Fi directory){
+    public EntityIO(BaseProcessor proc, String name, TypeSpec.Builder type, Seq<FieldSpec> typeFields, Codecs codecs, RevisionStore store){
         this.proc = proc;
-        this.directory = directory;
+        this.store = store;
         this.type = type;
-        this.serializer = serializer;
+        this.codecs = codecs;
+        serializer = codecs.serializer;
         this.name = name;
 
-        json.setIgnoreUnknownFields(true);
-        directory.mkdirs();
-
-        for(var fi : directory.list()) revisions.add(json.fromJson(Revision.class, fi).proc(proc));
-        revisions.sort(r -> r.version);
+        revisions.addAll(store.get(name));
 
         int nextRevision = revisions.isEmpty() ? 0 : revisions.max(r -> r.version).version + 1;
 
@@ -62,30 +70,42 @@ public class EntityIO{
 
         fields.sortComparing(f -> f.name);
         presentFields.addAll(fields.map(f -> f.name));
+        for(var field : fields) fieldTypes.put(field.name, field.type);
 
         var previous = revisions.isEmpty() ? null : revisions.peek();
         if(revisions.isEmpty() || !revisions.peek().equal(fields)){
-            revisions.add(new Revision(nextRevision, fields.map(f -> new RevisionField(f.name, f.type.toString()))).proc(proc));
+            var revision = new Revision(nextRevision, fields.map(f -> new RevisionField(f.name, f.type.toString()))).proc(proc);
+            revisions.add(revision);
             Log.warn("Adding new revision @ for @.\nPre = @\nNew = @\n", nextRevision, name, previous == null ? "(none)" : previous.fields.toString(", ", f -> f.name + ":" + f.type), fields.toString(", ", f -> f.name + ":" + f.type.toString()));
 
-            directory.child(nextRevision + ".json").writeString(json.toJson(revisions.peek()));
+            store.add(name, revision);
         }
     }
 
+    /** @return The expression accessing the owner's field, indexing into its column if it has one. */
+    public static String ref(ObjectSet<String> columns, String owner, String field){
+        if(!columns.contains(field)) return owner.isEmpty() ? field : owner + "." + field;
+        return storeField + "." + field + "[" + (owner.isEmpty() ? "" : owner + ".") + indexField + "]";
+    }
+
+    protected String ref(String owner, String field){
+        return ref(columns, owner, field);
+    }
+
     public void write(MethodSpec.Builder method, boolean write){
         this.method = method;
         this.write = write;
 
         if(write){
             st("write.s($L)", revisions.peek().version);
-            for(var field : revisions.peek().fields) io(field.type, "this." + field.name, false);
+            for(var field : revisions.peek().fields) io(field.type, ref("this", field.name), false);
         }else{
             st("short REV = read.s()");
 
             cont("switch(REV)");
             for(var rev : revisions){
                 cont("case $L ->", rev.version);
-                for(var field : rev.fields) io(field.type, presentFields.contains(field.name) ? "this." + field.name + " = " : "", false);
+                for(var field : rev.fields) io(field.type, presentFields.contains(field.name) ? ref("this", field.name) + " = " : "", false);
                 econt();
             }
 
@@ -97,16 +117,83 @@ public class EntityIO{
         }
     }
 
-    public void writeSync(MethodSpec.Builder method, boolean write, Seq<VarSymbol> allFields){
+    /**
+     * Enables delta sync as per {@link EntityDef#deltaSync()}, adding the per-viewer sync states into the entity type.
+     * Must be called before any sync method is written.
+     */
+    public void delta(int resyncInterval, ObjectMap<String, VarSymbol> fields){
+        this.resyncInterval = Math.max(resyncInterval, 1);
+
+        deltaFields = revisions.peek().fields.select(field -> {
+            var var = fields.get(field.name);
+            return var != null && proc.anno(var, NoSync.class) == null;
+        });
+
+        if(deltaFields.size > 64){
+            proc.err("Entity type '" + name + "' syncs " + deltaFields.size + " fields, but delta sync supports at most 64.");
+            deltaFields = null;
+            return;
+        }
+
+        // The values of comparable fields last sent whole to a viewer, how many syncs they have been sent since, and which
+        // of them have differed since.
+        var state = TypeSpec.classBuilder("SyncState_")
+            .addModifiers(PRIVATE, STATIC, FINAL)
+            .addField(TypeName.INT, "count")
+            .addField(TypeName.LONG, "dirty");
+
+        for(var field : deltaFields){
+            if(codecs.get(field.type).comparable) state.addField(fieldTypes.get(field.name), field.name);
+        }
+
+        var stateType = ClassName.get(proc.packageName, name, "SyncState_");
+        type.addType(state.build());
+        type.addField(FieldSpec.builder(ParameterizedTypeName.get(ClassName.get(ObjectMap.class), player, stateType), "SYNC_STATES_", PRIVATE, TRANSIENT, FINAL)
+            .initializer("new $T<>()", ObjectMap.class)
+        .build());
+        type.addField(FieldSpec.builder(player, "SYNC_VIEWER_", PRIVATE, TRANSIENT).build());
+    }
+
+    /**
+     * Adds {@code isSyncHidden(Player)} into the entity type, delegating to the merged implementation and remembering
+     * the player as the viewer of the {@code writeSync()} call that follows it, as Mindustry's entity snapshots do. An
+     * entity hidden from a player is removed on their end, so its next sync to them is sent whole again.
+     */
+    public void syncViewer(String impl){
+        if(deltaFields == null) return;
+
+        type.addMethod(MethodSpec.methodBuilder("isSyncHidden")
+            .addModifiers(PUBLIC)
+            .addAnnotation(spec(Override.class))
+            .returns(TypeName.BOOLEAN)
+            .addParameter(player, "player")
+            .addStatement("boolean hidden = $L(player)", impl)
+            .addStatement("SYNC_VIEWER_ = hidden ? null : player")
+            .addStatement("if(hidden) SYNC_STATES_.remove(player)")
+            .addStatement("return hidden")
+        .build());
+    }
+
+    /** Makes the next sync to every viewer send every field, for pooled entities being reused. */
+    public void resetDelta(MethodSpec.Builder method){
+        if(deltaFields == null) return;
+
+        method.addStatement("SYNC_STATES_.clear()");
+        method.addStatement("SYNC_VIEWER_ = null");
+    }
+
+    public void writeSync(MethodSpec.Builder method, boolean write, ObjectMap<String, VarSymbol> fields){
         this.method = method;
         this.write = write;
 
-        if(write){
+        if(deltaFields != null){
+            writeSyncDelta(write, fields);
+        }else if(write){
             for(var field : revisions.peek().fields){
-                var var = allFields.find(s -> name(s).equals(field.name));
-                if(var == null || anno(var, NoSync.class) != null) continue;
+                var var = fields.get(field.name);
+                if(var == null || proc.anno(var, NoSync.class) != null) continue;
 
-                io(field.type, "this." + field.name, true);
+                syncIo(field, var, ref("this", field.name));
             }
         }else{
             var rev = revisions.peek();
@@ -116,51 +203,314 @@ public class EntityIO{
             st("boolean islocal = isLocal()");
 
             for(var field : rev.fields){
-                var var = allFields.find(s -> name(s).equals(field.name));
-                if(var == null || anno(var, NoSync.class) != null) continue;
+                var var = fields.get(field.name);
+                if(var == null || proc.anno(var, NoSync.class) != null) continue;
+
+                readSyncField(field, var);
+            }
 
-                boolean sf = anno(var, SyncField.class) != null, sl = anno(var, SyncLocal.class) != null;
-                if(sl) cont("if(!islocal)");
-                if(sf) st(field.name + lastSuffix + " = this." + field.name);
+            st("afterSync()");
+        }
+    }
 
-                io(field.type, "this." + (sf ? field.name + targetSuffix : field.name) + " = ", true);
+    /**
+     * Writes the bitmask of fields that have differed at any point since they were last sent whole to the viewer followed
+     * by only those fields, or reads only the fields present in the bitmask. Each viewer is sent every field the first
+     * time, and every {@code resyncInterval} syncs after; in between, a field stays in the bitmask once changed, even if it
+     * changes back, so lost snapshots don't matter. Syncs without a known viewer are sent whole.
+     */
+    protected void writeSyncDelta(boolean write, ObjectMap<String, VarSymbol> fields){
+        int count = deltaFields.size;
+        String maskType = count <= 8 ? "b" : count <= 16 ? "s" : count <= 32 ? "i" : "l";
+        String full = count == 64 ? "-1L" : bit(count) + " - 1L";
 
-                if(sl){
-                    ncont("else");
-                    io(field.type, "", true);
+        if(write){
+            long always = 0L;
+            for(int i = 0; i < count; i++) if(!codecs.get(deltaFields.get(i).type).comparable) always |= 1L << i;
 
-                    if(sf){
-                        st(field.name + lastSuffix + " = this." + field.name);
-                        st(field.name + targetSuffix + " = this." + field.name);
-                    }
+            st("var VIEWER = SYNC_VIEWER_");
+            st("SYNC_VIEWER_ = null");
+            st("SyncState_ STATE = VIEWER == null ? null : SYNC_STATES_.get(VIEWER)");
+
+            cont("if(VIEWER != null && STATE == null)");
+            // Drop the states of players that have left, before adding one.
+            cont("for(var it = SYNC_STATES_.keys(); it.hasNext();)");
+            st("if(!it.next().isAdded()) it.remove()");
+            econt();
 
-                    econt();
+            st("SYNC_STATES_.put(VIEWER, STATE = new SyncState_())");
+            econt();
+
+            st("long MASK");
+            cont("if(STATE == null || STATE.count++ % $L == 0)", resyncInterval);
+            st("MASK = $L", full);
+            cont("if(STATE != null)");
+            st("STATE.dirty = 0L");
+            for(var field : deltaFields){
+                if(codecs.get(field.type).comparable) st("STATE.$L = $L", field.name, ref("this", field.name));
+            }
+            econt();
+
+            ncont("else");
+            for(int i = 0; i < count; i++){
+                var field = deltaFields.get(i);
+                if(codecs.get(field.type).comparable) st("if($L != STATE.$L) STATE.dirty |= $L", ref("this", field.name), field.name, bit(i));
+            }
+
+            st("MASK = $L | STATE.dirty", hex(always));
+            econt();
+
+            st("write.$L($LMASK)", maskType, maskType.equals("l") ? "" : "(int)");
+            for(int i = 0; i < count; i++){
+                var field = deltaFields.get(i);
+
+                cont("if((MASK & $L) != 0L)", bit(i));
+                syncIo(field, fields.get(field.name), ref("this", field.name));
+                econt();
+            }
+        }else{
+            st("if(lastUpdated != 0) updateSpacing = $T.timeSinceMillis(lastUpdated)", spec(Time.class));
+            st("lastUpdated = $T.millis()", spec(Time.class));
+            st("boolean islocal = isLocal()");
+            st("long MASK = read.$L()$L", maskType, switch(maskType){
+                case "b" -> " & 0xffL";
+                case "s" -> " & 0xffffL";
+                case "i" -> " & 0xffffffffL";
+                default -> "";
+            });
+
+            for(int i = 0; i < count; i++){
+                var field = deltaFields.get(i);
+                var var = fields.get(field.name);
+
+                cont("if((MASK & $L) != 0L)", bit(i));
+                readSyncField(field, var);
+
+                // Unchanged fields still interpolate towards their last target, starting from where they are now.
+                if(proc.anno(var, SyncField.class) != null){
+                    ncont("else$L", proc.anno(var, SyncLocal.class) != null ? " if(!islocal)" : "");
+                    st(field.name + lastSuffix + " = " + ref("this", field.name));
                 }
+
+                econt();
             }
 
             st("afterSync()");
         }
     }
 
+    protected void readSyncField(RevisionField field, VarSymbol var){
+        boolean sf = proc.anno(var, SyncField.class) != null, sl = proc.anno(var, SyncLocal.class) != null;
+        if(sl) cont("if(!islocal)");
+        if(sf) st(field.name + lastSuffix + " = " + ref("this", field.name));
+
+        syncIo(field, var, (sf ? "this." + field.name + targetSuffix : ref("this", field.name)) + " = ");
+
+        if(sl){
+            ncont("else");
+            syncIo(field, var, "");
+
+            if(sf){
+                st(field.name + lastSuffix + " = " + ref("this", field.name));
+                st(field.name + targetSuffix + " = " + ref("this", field.name));
+            }
+
+            econt();
+        }
+    }
+
+    /** Serializes a synced field, quantized as specified by its {@link SyncField} if any. */
+    protected void syncIo(RevisionField field, VarSymbol var, String target){
+        var sync = proc.anno(var, SyncField.class);
+        if(sync != null && sync.precision() > 0f){
+            float min = sync.min(), range = sync.max() - sync.min(), precision = sync.precision();
+            long steps = (long)Math.ceil(range / precision);
+            String kind = steps <= 0xffL ? "b" : steps <= 0xffffL ? "s" : "i";
+
+            if(write){
+                // Angles are wrapped into the range instead of being clamped.
+                st("write.$L((int)($L / $L + 0.5f))", kind, sync.value()
+                    ? CodeBlock.of("($T.clamp($L, $L, $L) - $L)", spec(Mathf.class), target, literal(min), literal(sync.max()), literal(min))
+                    : CodeBlock.of("$T.mod($L - $L, $L)", spec(Mathf.class), target, literal(min), literal(range)),
+                    literal(precision)
+                );
+            }else if(target.isEmpty()){
+                st("read.$L()", kind);
+            }else{
+                st("$L$L * $L + $L", target, switch(kind){
+                    case "b" -> "(read.b() & 0xff)";
+                    case "s" -> "(read.s() & 0xffff)";
+                    default -> "read.i()";
+                }, literal(precision), literal(min));
+            }
+        }else if(sync != null && sync.half()){
+            halfHelpers();
+            if(write){
+                st("write.s(toHalf_($L))", target);
+            }else if(target.isEmpty()){
+                st("read.s()");
+            }else{
+                st("$LfromHalf_(read.s())", target);
+            }
+        }else{
+            io(field.type, target, true);
+        }
+    }
+
+    /** Adds half-precision float conversion methods into the entity type, once. */
+    protected void halfHelpers(){
+        if(hasHalfHelpers) return;
+        hasHalfHelpers = true;
+
+        // Rounds to nearest; overflows to infinity and underflows through subnormals to zero.
+        type.addMethod(MethodSpec.methodBuilder("toHalf_")
+            .addModifiers(PRIVATE, STATIC)
+            .returns(TypeName.INT)
+            .addParameter(TypeName.FLOAT, "value")
+            .addStatement("int bits = $T.floatToRawIntBits(value)", spec(Float.class))
+            .addStatement("int sign = (bits >>> 16) & 0x8000")
+            .addStatement("int abs = bits & 0x7fffffff")
+            .addStatement("if(abs >= 0x7f800000) return sign | 0x7c00 | (abs > 0x7f800000 ? 0x200 : 0)")
+            .addStatement("if(abs >= 0x477ff000) return sign | 0x7c00")
+            .addStatement("if(abs >= 0x38800000) return sign | ((abs - 0x38000000 + 0x1000) >>> 13)")
+            .addStatement("if(abs < 0x33000000) return sign")
+            .addStatement("int exp = abs >>> 23")
+            .addStatement("return sign | ((((abs & 0x7fffff) | 0x800000) + (0x800000 >>> (exp - 102))) >>> (126 - exp))")
+            .build()
+        );
+
+        type.addMethod(MethodSpec.methodBuilder("fromHalf_")
+            .addModifiers(PRIVATE, STATIC)
+            .returns(TypeName.FLOAT)
+            .addParameter(TypeName.SHORT, "half")
+            .addStatement("int sign = (half & 0x8000) << 16, exp = (half >>> 10) & 0x1f, mant = half & 0x3ff")
+            .addStatement("if(exp == 0x1f) return $T.intBitsToFloat(sign | 0x7f800000 | (mant << 13))", spec(Float.class))
+            .addStatement("if(exp != 0) return $T.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13))", spec(Float.class))
+            .addStatement("float sub = mant * 5.9604645E-8f")
+            .addStatement("return sign == 0 ? sub : -sub")
+            .build()
+        );
+    }
+
+    protected static String literal(float value){
+        return value + "f";
+    }
+
+    protected static String bit(int index){
+        return hex(1L << index);
+    }
+
+    protected static String hex(long value){
+        return "0x" + Long.toHexString(value) + "L";
+    }
+
     public void writeSyncManual(MethodSpec.Builder method, boolean write, Seq<VarSymbol> syncFields){
         this.method = method;
         this.write = write;
 
         if(write){
             for(var field : syncFields){
-                st("buffer.put(this.$L)", name(field));
+                st("buffer.put($L)", ref("this", name(field)));
             }
         }else{
             st("if(lastUpdated != 0) updateSpacing = $T.timeSinceMillis(lastUpdated)", spec(Time.class));
             st("lastUpdated = $T.millis()", spec(Time.class));
 
             for(var field : syncFields){
-                st("this.$L = this.$L", name(field) + lastSuffix, name(field));
+                st("this.$L = $L", name(field) + lastSuffix, ref("this", name(field)));
                 st("this.$L = buffer.get()", name(field) + targetSuffix);
             }
         }
     }
 
+    /**
+     * Adds static {@code writeSyncAll(Seq, FloatBuffer)} and {@code readSyncAll(Seq, FloatBuffer)} methods into the
+     * entity type, which put or get the synced fields of every given entity column by column: all values of the first
+     * field, then all values of the second, and so on. Both ends must pass the same entities in the same order.
+     */
+    public void writeSyncAll(ClassName self, Seq<VarSymbol> fields){
+        var entities = ParameterizedTypeName.get(ClassName.get(Seq.class), WildcardTypeName.subtypeOf(self));
+        var buffer = ClassName.get("java.nio", "FloatBuffer");
+
+        var writer = MethodSpec.methodBuilder("writeSyncAll")
+            .addModifiers(PUBLIC, STATIC)
+            .addParameter(entities, "entities")
+            .addParameter(buffer, "buffer")
+            // Accessed through a wildcard, as the backing array isn't necessarily typed.
+            .addStatement("$T[] items = (($T<?>)entities).items", Object.class, Seq.class)
+            .addStatement("int size = entities.size");
+
+        for(var field : fields){
+            writer.addStatement("for(int i = 0; i < size; i++) buffer.put($L)", ref("((" + self.simpleName() + ")items[i])", name(field)));
+        }
+
+        var reader = MethodSpec.methodBuilder("readSyncAll")
+            .addModifiers(PUBLIC, STATIC)
+            .addParameter(entities, "entities")
+            .addParameter(buffer, "buffer")
+            .addStatement("$T[] items = (($T<?>)entities).items", Object.class, Seq.class)
+            .addStatement("int size = entities.size")
+            .addStatement("long now = $T.millis()", spec(Time.class))
+            .beginControlFlow("for(int i = 0; i < size; i++)")
+                .addStatement("var entity = ($T)items[i]", self)
+                .addStatement("if(entity.lastUpdated != 0) entity.updateSpacing = now - entity.lastUpdated")
+                .addStatement("entity.lastUpdated = now")
+            .endControlFlow();
+
+        for(var field : fields){
+            var fname = name(field);
+            reader.beginControlFlow("for(int i = 0; i < size; i++)")
+                .addStatement("var entity = ($T)items[i]", self)
+                .addStatement("entity.$L = $L", fname + lastSuffix, ref("entity", fname))
+                .addStatement("entity.$L = buffer.get()", fname + targetSuffix)
+            .endControlFlow();
+        }
+
+        type.addMethod(writer.build());
+        type.addMethod(reader.build());
+    }
+
+    /**
+     * Adds a static {@code interpolateAll(Seq)} method into the entity type, which applies the same field interpolation
+     * as {@code interpolate()} to every given entity, without any component code. The clock is sampled once for all of
+     * them, and each field is a straight-line kernel. Local entities are skipped, as {@code SyncComp} only interpolates
+     * remote ones; the locally controlled unit would otherwise snap back to its last synced position.
+     */
+    public void writeInterpolateAll(ClassName self, Seq<VarSymbol> fields){
+        var method = MethodSpec.methodBuilder("interpolateAll")
+            .addModifiers(PUBLIC, STATIC)
+            .addParameter(ParameterizedTypeName.get(ClassName.get(Seq.class), WildcardTypeName.subtypeOf(self)), "entities")
+            .addStatement("$T[] items = (($T<?>)entities).items", Object.class, Seq.class)
+            .addStatement("int size = entities.size")
+            .addStatement("long now = $T.millis()", spec(Time.class))
+            .beginControlFlow("for(int i = 0; i < size; i++)")
+                .addStatement("var entity = ($T)items[i]", self)
+                .addStatement("if(entity.isLocal()) continue")
+                .beginControlFlow("if(entity.lastUpdated != 0 && entity.updateSpacing != 0)")
+                    .addStatement("float alpha = $T.min((now - entity.lastUpdated) / (float)entity.updateSpacing, 2f)", spec(Math.class));
+
+        for(var field : fields){
+            String name = name(field), target = "entity." + name + targetSuffix, last = "entity." + name + lastSuffix;
+            var sync = proc.anno(field, SyncField.class);
+
+            var value = sync.value()
+                ? CodeBlock.of("$L + ($L - $L) * alpha", last, target, last)
+                : CodeBlock.of("$T.slerp($L, $L, alpha)", spec(Mathf.class), last, target);
+
+            if(sync.clamped()){
+                method.addStatement("$L = $T.clamp($L)", ref("entity", name), spec(Mathf.class), value);
+            }else{
+                method.addStatement("$L = $L", ref("entity", name), value);
+            }
+        }
+
+        method.nextControlFlow("else if(entity.lastUpdated != 0)");
+        for(var field : fields) method.addStatement("$L = entity.$L", ref("entity", name(field)), name(field) + targetSuffix);
+
+        method.endControlFlow().endControlFlow();
+        type.addMethod(method.build());
+    }
+
     public void writeInterpolate(MethodSpec.Builder method, Seq<VarSymbol> fields){
         this.method = method;
 
@@ -172,9 +522,9 @@ public class EntityIO{
         for(var field : fields){
             String name = name(field), targetName = name + targetSuffix, lastName = name + lastSuffix;
             st("$L = $L($T.$L($L, $L, alpha))",
-                name, anno(field, SyncField.class).clamped() ? "arc.math.Mathf.clamp" : "",
+                ref("this", name), proc.anno(field, SyncField.class).clamped() ? "arc.math.Mathf.clamp" : "",
                 spec(Mathf.class),
-                anno(field, SyncField.class).value() ? "lerp" : "slerp", lastName, targetName
+                proc.anno(field, SyncField.class).value() ? "lerp" : "slerp", lastName, targetName
             );
         }
 
@@ -182,36 +532,32 @@ public class EntityIO{
 
         for(var field : fields){
             String name = name(field), targetName = name + targetSuffix;
-            st("$L = $L", name, targetName);
+            st("$L = $L", ref("this", name), targetName);
         }
 
         econt();
     }
 
     private void io(String type, String field, boolean network){
-        type = type.replace(proc.packageName + ".", "");
-        type = refactors.get(type, type);
-
-        if(isPrimitive(type)){
-            s(type.equals("boolean") ? "bool" : String.valueOf(type.charAt(0)), field);
-        }else if(
-            proc.instanceOf(type, "mindustry.ctype.Content") &&
-            !type.equals("mindustry.ai.UnitStance") &&
-            !type.equals("mindustry.ai.UnitCommand")
-        ){
+        var codec = codecs.get(type);
+        type = codec.type;
+
+        if(codec.primitive != null){
+            s(codec.primitive, field);
+        }else if(codec.content != null){
             if(write){
                 s("s", field + ".id");
             }else{
-                st(field + "$T.content.getByID($T.$L, read.s())", spec(Vars.class), spec(ContentType.class), name(type).toLowerCase().replace("type", ""));
+                st(field + "$T.content.getByID($T.$L, read.s())", spec(Vars.class), spec(ContentType.class), codec.content);
             }
-        }else if((serializer.writers.containsKey(type) || (network && serializer.netWriters.containsKey(type))) && write){
-            st("$L(write, $L)", network ? serializer.getNetWriter(type, null) : serializer.writers.get(type), field);
-        }else if(serializer.mutatorReaders.containsKey(type) && !write && !field.replace(" = ", "").contains(" ") && !field.isEmpty()){
-            st("$L$L(read, $L)", field, serializer.mutatorReaders.get(type), field.replace(" = ", ""));
-        }else if(serializer.readers.containsKey(type) && !write){
-            st("$L$L(read)", field, serializer.readers.get(type));
-        }else if(type.endsWith("[]")){
-            var rawType = type.substring(0, type.length() - 2);
+        }else if((codec.writer != null || (network && codec.netWriter != null)) && write){
+            st("$L(write, $L)", network ? codec.netWriter : codec.writer, field);
+        }else if(codec.mutatorReader != null && !write && !field.replace(" = ", "").contains(" ") && !field.isEmpty()){
+            st("$L$L(read, $L)", field, codec.mutatorReader, field.replace(" = ", ""));
+        }else if(codec.reader != null && !write){
+            st("$L$L(read)", field, codec.reader);
+        }else if(codec.component != null){
+            var rawType = codec.component;
             if(write){
                 s("i", field + ".length");
                 cont("for(int INDEX = 0; INDEX < $L.length; INDEX ++)", field);
@@ -228,9 +574,9 @@ public class EntityIO{
             }
 
             econt();
-        }else if(type.startsWith("arc.struct") && type.contains("<")){
-            var struct = type.substring(0, type.indexOf("<"));
-            var generic = type.substring(type.indexOf("<") + 1, type.indexOf(">"));
+        }else if(codec.struct != null){
+            var struct = codec.struct;
+            var generic = codec.generic;
 
             if(struct.equals("arc.struct.Queue") || struct.equals("arc.struct.Seq")){
                 if(write){
@@ -286,6 +632,89 @@ public class EntityIO{
         }
     }
 
+    /**
+     * Per-build cache of how each field type is serialized, so that the type checks and serializer lookups in
+     * {@link #io(String, String, boolean)} are done once per type instead of once per field of every revision.
+     */
+    public static class Codecs{
+        public final BaseProcessor proc;
+        public final ClassSerializer serializer;
+
+        protected final ObjectMap<String, Codec> codecs = new ObjectMap<>();
+
+        public Codecs(BaseProcessor proc, ClassSerializer serializer){
+            this.proc = proc;
+            this.serializer = serializer;
+        }
+
+        public Codec get(String type){
+            var codec = codecs.get(type);
+            if(codec == null){
+                var normalized = type.replace(proc.packageName + ".", "");
+                normalized = refactors.get(normalized, normalized);
+
+                codec = codecs.get(normalized);
+                if(codec == null) codecs.put(normalized, codec = new Codec(this, normalized));
+                codecs.put(type, codec);
+            }
+
+            return codec;
+        }
+    }
+
+    /** Resolved serialization strategy of a normalized type; fields that don't apply to it are {@code null}. */
+    public static class Codec{
+        public final String type;
+        /** Method suffix of primitive {@code Writes}/{@code Reads} calls. */
+        public final @Nullable String primitive;
+        /** {@code ContentType} field name of content types, serialized by ID. */
+        public final @Nullable String content;
+        public final @Nullable String writer, netWriter, mutatorReader, reader;
+        /** Component type of array types. */
+        public final @Nullable String component;
+        /** Raw and generic type of {@code arc.struct} collections. */
+        public final @Nullable String struct, generic;
+        /**
+         * Whether a change of value is detectable by comparing with {@code !=}, i.e. the type is primitive or its
+         * instances are never mutated in-place in a way that affects their serialized form.
+         */
+        public final boolean comparable;
+
+        public Codec(Codecs codecs, String type){
+            this.type = type;
+            var serializer = codecs.serializer;
+
+            primitive = isPrimitive(type) ? type.equals("boolean") ? "bool" : String.valueOf(type.charAt(0)) : null;
+            content = primitive == null &&
+                !type.equals("mindustry.ai.UnitStance") &&
+                !type.equals("mindustry.ai.UnitCommand") &&
+                codecs.proc.instanceOf(type, "mindustry.ctype.Content")
+                ? name(type).toLowerCase().replace("type", "") : null;
+
+            writer = serializer.writers.get(type);
+            netWriter = serializer.getNetWriter(type, null);
+            mutatorReader = serializer.mutatorReaders.get(type);
+            reader = serializer.readers.get(type);
+
+            component = type.endsWith("[]") ? type.substring(0, type.length() - 2) : null;
+            if(type.startsWith("arc.struct") && type.contains("<")){
+                struct = type.substring(0, type.indexOf("<"));
+                generic = type.substring(type.indexOf("<") + 1, type.indexOf(">"));
+            }else{
+                struct = generic = null;
+            }
+
+            var element = component == null && struct == null ? codecs.proc.elements.getTypeElement(type) : null;
+            comparable = primitive != null || content != null || (element != null && (
+                element.getKind() == ElementKind.ENUM ||
+                type.equals("java.lang.String") ||
+                type.equals("mindustry.game.Team") ||
+                type.equals("mindustry.world.Tile") ||
+                codecs.proc.instanceOf(type, "mindustry.gen.Entityc")
+            ));
+        }
+    }
+
     public static class Revision{
         public int version;
         public Seq<RevisionField> fields;
@@ -9,19 +9,21 @@ import arc.util.pooling.Pool.*;
 import com.squareup.javapoet.*;
 import com.sun.tools.javac.code.*;
 import com.sun.tools.javac.code.Symbol.*;
-import com.sun.tools.javac.tree.*;
 import com.sun.tools.javac.tree.JCTree.*;
 import ent.anno.*;
 import ent.anno.Annotations.*;
 import ent.anno.TypeIOResolver.*;
+import ent.anno.proc.EntityIO.*;
 import mindustry.gen.*;
 
 import javax.annotation.processing.*;
 import javax.lang.model.element.*;
 import java.io.*;
 import java.lang.*;
+import java.lang.ref.*;
 import java.lang.Class;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static javax.lang.model.element.ElementKind.*;
 import static javax.lang.model.element.Modifier.*;
@@ -32,14 +34,14 @@ import static javax.lang.model.type.TypeKind.*;
  * @author Anuke
  */
 public class EntityProcessor extends BaseProcessor{
-    private static final Seq<MethodSymbol> tmpMethods = new Seq<>();
-    private static final Seq<Object> tmpArgs = new Seq<>();
-    private static final Comparator<MethodSymbol> methodSorter = Structs.comps(Structs.comparingInt(m -> {
+    protected final Comparator<MethodSymbol> methodSorter = Structs.comps(Structs.comparingInt(m -> {
         var priority = anno(m, MethodPriority.class);
         return priority == null ? 0 : priority.value();
     }), Structs.comparing(BaseProcessor::name));
 
     protected Fi revDir;
+    protected RevisionStore revStore;
+    protected EntityCache cache;
 
     protected OrderedMap<String, ClassSymbol> comps = new OrderedMap<>();
     protected OrderedMap<String, ClassSymbol> inters = new OrderedMap<>();
@@ -55,6 +57,11 @@ public class EntityProcessor extends BaseProcessor{
 
     protected ObjectMap<String, JCExpression> varInitializers = new ObjectMap<>();
     protected ObjectMap<String, JCBlock> methodBlocks = new ObjectMap<>();
+    protected ObjectMap<String, String> printedBlocks = new ObjectMap<>();
+    protected ObjectMap<String, ForkJoinTask<String>> printTasks = new ObjectMap<>();
+    /** Fields of the entity definition being generated that are stored in its store's columns, and its name. */
+    protected ObjectSet<String> columns = new ObjectSet<>();
+    protected @Nullable String columnOwner;
     protected ObjectMap<ClassSymbol, Seq<String>> imports = new ObjectMap<>();
     protected ObjectMap<ClassSymbol, Seq<ClassSymbol>> dependencies = new ObjectMap<>();
     protected ObjectMap<ClassSymbol, ObjectSet<ClassSymbol>> baseDependencies = new ObjectMap<>();
@@ -62,6 +69,7 @@ public class EntityProcessor extends BaseProcessor{
     protected Seq<EntityDefinition> definitions = new Seq<>();
 
     protected ClassSerializer serializer;
+    protected Codecs codecs;
 
     {
         rounds = 2;
@@ -82,12 +90,18 @@ public class EntityProcessor extends BaseProcessor{
         if(dir == null) throw new IllegalStateException("`revisionDir` not supplied!");
 
         revDir = Fi.get(dir);
+        var pending = env.getOptions().get("pendingRevisionDir");
+        revStore = new RevisionStore(this, revDir, pending == null ? null : Fi.get(pending));
+        // Builds not passing a cache directory keep the old location beside the revisions.
+        var cacheDir = env.getOptions().get("cacheDir");
+        cache = new EntityCache(this, cacheDir == null ? revDir.sibling(revDir.name() + "-cache") : Fi.get(cacheDir));
     }
 
     @Override
     protected void process() throws IOException{
         switch(round){
             case 1 -> {
+                timings.begin("scan");
                 for(var t : this.<ClassSymbol>with(EntityComponent.class)) comps.put(name(t), t);
                 for(var t : this.<ClassSymbol>with(EntityBaseComponent.class)) baseComps.add(t);
                 for(var s : with(EntityDef.class)) defs.add(s);
@@ -134,20 +148,30 @@ public class EntityProcessor extends BaseProcessor{
                     }).get(anno(e, Wrap.class).value(), () -> new Seq<>(false)).add(e);
                 }
 
-                serializer = TypeIOResolver.resolve(this);
-                groups.putAll(
-                    comp(Entityc.class), "all",
-                    comp(Playerc.class), "player",
-                    comp(Bulletc.class), "bullet",
-                    comp(Unitc.class), "unit",
-                    comp(Buildingc.class), "build",
-                    comp(Syncc.class), "sync",
-                    comp(Drawc.class), "draw",
-                    comp(Firec.class), "fire",
-                    comp(Puddlec.class), "puddle",
-                    comp(WorldLabelc.class), "label",
-                    comp(PowerGraphUpdaterc.class), "powerGraph"
-                );
+                timings.end();
+
+                timings.begin("resolve");
+                serializer = TypeIOResolver.resolve(this, cache.directory.child("typeio"));
+                codecs = new Codecs(this, serializer);
+                timings.end();
+
+                // Vanilla components that weren't fetched, e.g. in the benchmark and tests, don't have groups.
+                for(var group : ObjectMap.<Class<?>, String>of(
+                    Entityc.class, "all",
+                    Playerc.class, "player",
+                    Bulletc.class, "bullet",
+                    Unitc.class, "unit",
+                    Buildingc.class, "build",
+                    Syncc.class, "sync",
+                    Drawc.class, "draw",
+                    Firec.class, "fire",
+                    Puddlec.class, "puddle",
+                    WorldLabelc.class, "label",
+                    PowerGraphUpdaterc.class, "powerGraph"
+                )){
+                    var comp = comp(group.key);
+                    if(comp != null) groups.put(comp, group.value);
+                }
 
                 for(var s : elements.getPackageElement("mindustry.gen").getEnclosedElements()){
                     var name = name(s);
@@ -157,6 +181,7 @@ public class EntityProcessor extends BaseProcessor{
                 }
 
                 for(var comp : comps.values()){
+                    timings.begin("scan");
                     for(var s : comp.getEnclosedElements()){
                         if(s.getKind() == FIELD){
                             var tree = (JCVariableDecl)trees.getTree(s);
@@ -176,6 +201,9 @@ public class EntityProcessor extends BaseProcessor{
                     }
 
                     imports.put(comp, imports(comp));
+                    timings.end();
+
+                    timings.begin("interfaces");
                     var deps = dependencies(comp);
 
                     var compAnno = anno(comp, EntityComponent.class);
@@ -199,7 +227,7 @@ public class EntityProcessor extends BaseProcessor{
                             var e = (MethodSymbol)s;
 
                             signatures.add(sigName(e));
-                            if(anno(e, Override.class) == null){
+                            if(!has(e, Override.class)){
                                 var methBuilder = MethodSpec.methodBuilder(name(e))
                                     .addModifiers(PUBLIC, ABSTRACT)
                                     .returns(spec(e.getReturnType()));
@@ -243,7 +271,7 @@ public class EntityProcessor extends BaseProcessor{
                             }
                         }
 
-                        write(intBuilder, imports.get(comp));
+                        generate(intBuilder, imports.get(comp), null);
                         if(compAnno.base()){
                             var baseDeps = deps.copy().add(comp);
                             baseDependencies.get(comp, ObjectSet::new).addAll(baseDeps);
@@ -286,7 +314,11 @@ public class EntityProcessor extends BaseProcessor{
                         var base = elements.getTypeElement("mindustry.gen." + name);
                         if(base != null) baseClassTypes.put(name, base);
                     }
+
+                    timings.end();
                 }
+
+                generate();
             }
 
             case 2 -> {
@@ -306,7 +338,7 @@ public class EntityProcessor extends BaseProcessor{
                 ObjectSet<String> usedFields = new ObjectSet<>();
 
                 Seq<VarSymbol> syncedFields = new Seq<>();
-                Seq<VarSymbol> allFields = new Seq<>();
+                ObjectMap<String, VarSymbol> fieldsByName = new ObjectMap<>();
                 Seq<FieldSpec> allFieldSpecs = new Seq<>();
 
                 ObjectMap<String, Seq<MethodSymbol>> allInserters = new ObjectMap<>();
@@ -315,6 +347,7 @@ public class EntityProcessor extends BaseProcessor{
                 OrderedSet<MethodSymbol> standaloneInserts = new OrderedSet<>(), standaloneWraps = new OrderedSet<>();
 
                 ObjectSet<MethodSymbol> removal = new ObjectSet<>();
+                boolean hasColumns = false;
                 for(var def : defs){
                     var defAnno = anno(def, EntityDef.class);
 
@@ -345,11 +378,32 @@ public class EntityProcessor extends BaseProcessor{
 
                     if(!typeIsBase && baseClassType != null && name.equals(baseName(baseClassType))) name += "Entity";
                     if(!registers.add(name)) continue;
+                    timings.definition(name);
+                    hasColumns |= defAnno.soa();
 
                     defCompsResolve.clear();
                     for(var comp : defComps.values()) for(var dep : dependencies(comp)) defCompsResolve.put(name(dep), dep);
                     defComps.putAll(defCompsResolve);
 
+                    // Definitions that contribute accessors to a generated base class can't skip generation.
+                    var extend = typeIsBase ? null : baseClassType;
+                    var extType = extend == null ? null : baseClassTypes.get(baseName(extend));
+
+                    boolean cacheable = extType == null || !baseClasses.containsKey(name(extType));
+                    if(cacheable){
+                        var source = cache.get(name, cache.hash(name, def, defComps.values(), revStore.get(name)));
+                        if(source != null){
+                            var definition = new EntityDefinition(name, null, def, extend, defComps.values().toSeq(), null);
+                            definition.source = source;
+
+                            definitions.add(definition);
+                            continue;
+                        }
+                    }
+
+                    // Only the blocks of definitions that are actually generated get printed; ones with columns print their own.
+                    if(parallel && !defAnno.soa()) printBlocks(defComps.values());
+
                     defGroups.clear();
                     excludeGroups.clear();
                     for(var comp : defComps.values()){
@@ -379,12 +433,27 @@ public class EntityProcessor extends BaseProcessor{
                     usedFields.clear();
 
                     syncedFields.clear();
-                    allFields.clear();
+                    fieldsByName.clear();
                     allFieldSpecs.clear();
 
                     allInserters.clear();
                     allWrappers.clear();
 
+                    columns.clear();
+                    columnOwner = name;
+                    if(defAnno.soa()){
+                        for(var comp : defComps.values()){
+                            if(baseClassType != null && !typeIsBase && baseDependencies.get(baseClassType).contains(comp)) continue;
+                            for(var s : comp.getEnclosedElements()){
+                                if(
+                                    s.getKind() == FIELD && anno(s, Import.class) == null && !isAny(s, STATIC, VOLATILE) &&
+                                    (s.asType().getKind() == FLOAT || s.asType().getKind() == INT)
+                                ) columns.add(name(s));
+                            }
+                        }
+                    }
+
+                    var initializer = CodeBlock.builder();
                     boolean isSync = defComps.containsKey("SyncComp");
                     for(var comp : defComps.values()){
                         var tmp = inserters.get(comp);
@@ -420,18 +489,28 @@ public class EntityProcessor extends BaseProcessor{
                                     field.addModifiers(PUBLIC);
                                 }
 
+                                // With columns, instance fields are initialized in declaration order in an initializer block instead.
                                 var init = varInitializers.get(desc(v));
-                                if(init != null) field.initializer(init.toString());
+                                boolean isColumn = columns.contains(fname), deferInit = !columns.isEmpty() && !is(v, STATIC);
+                                if(init != null && !deferInit) field.initializer(init.toString());
 
                                 for(var anno : v.getAnnotationMirrors()) field.addAnnotation(spec(anno));
                                 var spec = field.build();
 
                                 boolean isVisible = !isAny(v, STATIC, PRIVATE) && anno(v, ReadOnly.class) == null;
-                                if(!isShadowed || !isVisible) builder.addField(spec);
+                                if(!isShadowed || !isVisible){
+                                    if(!isColumn) builder.addField(spec);
+                                    if(isColumn || (deferInit && init != null)){
+                                        initializer.addStatement("$L = $L", EntityIO.ref(columns, "this", fname), init != null
+                                            ? initializer(v, init)
+                                            : getDefault(spec.type.toString())
+                                        );
+                                    }
+                                }
 
                                 specVariables.put(spec, v);
                                 allFieldSpecs.add(spec);
-                                allFields.add(v);
+                                fieldsByName.put(fname, v);
 
                                 if(isSync && anno(v, SyncField.class) != null){
                                     if(v.type.getKind() != FLOAT){
@@ -439,6 +518,12 @@ public class EntityProcessor extends BaseProcessor{
                                         continue;
                                     }
 
+                                    var sync = anno(v, SyncField.class);
+                                    if(sync.precision() > 0f && !(sync.max() > sync.min() && (sync.max() - sync.min()) / sync.precision() <= Integer.MAX_VALUE)){
+                                        err("Quantized @SyncFields must have a range with `max` above `min`, of at most 2^31 steps.", v);
+                                        continue;
+                                    }
+
                                     syncedFields.add(v);
                                     builder.addField(FieldSpec.builder(TypeName.FLOAT, fname + EntityIO.targetSuffix, TRANSIENT, PRIVATE).build());
                                     builder.addField(FieldSpec.builder(TypeName.FLOAT, fname + EntityIO.lastSuffix, TRANSIENT, PRIVATE).build());
@@ -450,32 +535,38 @@ public class EntityProcessor extends BaseProcessor{
                         }
                     }
 
+                    if(!columns.isEmpty()) columns(builder, name, allFieldSpecs, initializer.build());
                     if(!methods.containsKey("toString()")){
                         builder.addMethod(
                             MethodSpec.methodBuilder("toString")
                                 .addAnnotation(spec(Override.class))
                                 .returns(spec(String.class))
                                 .addModifiers(PUBLIC)
-                                .addStatement("return $S + $L", name + "#", "id")
+                                .addStatement("return $S + $L", name + "#", EntityIO.ref(columns, "", "id"))
                             .build()
                         );
                     }
 
                     EntityIO io = null;
                     boolean hasIO = defAnno.genIO() && (isSync || defAnno.serialize());
+                    if(hasIO){
+                        timings.begin("revisions");
+                        io = new EntityIO(this, name, builder, allFieldSpecs, codecs, revStore);
+                        io.columns = columns;
+                        if(isSync && defAnno.deltaSync()) io.delta(defAnno.resyncInterval(), fieldsByName);
+                        timings.end();
+                    }
 
                     boolean serializeOverride = false;
+
+                    timings.begin("merge");
                     for(var entry : methods.entries()){
                         var key = entry.key;
                         var entries = entry.value;
 
-                        var setter = allFields.find(v -> {
-                            var first = entries.first();
-                            return
-                                name(v).equals(name(first)) &&
-                                first.getParameters().size() == 1 && same(first.getParameters().get(0).type, v.type) &&
-                                first.getReturnType().getKind() == VOID;
-                        });
+                        var first = entries.first();
+                        var setter = first.getParameters().size() == 1 && first.getReturnType().getKind() == VOID ? fieldsByName.get(name(first)) : null;
+                        if(setter != null && !same(first.getParameters().get(0).type, setter.type)) setter = null;
 
                         if(setter != null){
                             var c = setter.enclClass();
@@ -555,8 +646,10 @@ public class EntityProcessor extends BaseProcessor{
                             continue;
                         }
 
-                        boolean isPrivate = is(m, PRIVATE);
-                        var methBuilder = MethodSpec.methodBuilder(mname)
+                        // With delta sync, the merged isSyncHidden(Player) is wrapped to remember the sync's viewer.
+                        boolean isViewer = io != null && io.deltaFields != null && mname.equals("isSyncHidden") && m.params.size() == 1 && m.getReturnType().getKind() == BOOLEAN;
+                        boolean isPrivate = is(m, PRIVATE) || isViewer;
+                        var methBuilder = MethodSpec.methodBuilder(isViewer ? mname + "_" : mname)
                             .addModifiers(isPrivate ? PRIVATE : PUBLIC)
                             .returns(spec(m.getReturnType()));
 
@@ -620,7 +713,7 @@ public class EntityProcessor extends BaseProcessor{
 
                             bypass.sort(methodSorter);
 
-                            var priorBypass = tmpMethods.selectFrom(standaloneInserts.orderedItems(), e -> !anno(e, Insert.class).after() && anno(e, BypassGroupCheck.class) != null);
+                            var priorBypass = standaloneInserts.orderedItems().select(e -> !anno(e, Insert.class).after() && anno(e, BypassGroupCheck.class) != null);
                             if(priorBypass.any()){
                                 standaloneInserts.removeAll(priorBypass);
                                 for(var e : priorBypass) methBuilder.addStatement("this.$L()", name(e));
@@ -641,30 +734,20 @@ public class EntityProcessor extends BaseProcessor{
                         if(!standaloneWraps.isEmpty()){
                             var arr = standaloneWraps.orderedItems();
 
-                            var format = new StringBuilder("if(this.$L()");
-                            tmpArgs.clear().add(name(arr.first()));
-
-                            for(int i = 1; i < arr.size; i++){
-                                format.append(" && this.$L()");
-                                tmpArgs.add(name(arr.get(i)));
-                            }
-
-                            methBuilder.beginControlFlow(format.append(")").toString(), tmpArgs.toArray());
+                            wrap(methBuilder, arr);
                         }
 
                         for(var e : standaloneInserts) if(!anno(e, Insert.class).after()) methBuilder.addStatement("this.$L()", name(e));
 
-                        allFields.sortComparing(BaseProcessor::name);
                         syncedFields.sortComparing(BaseProcessor::name);
 
                         if(hasIO){
-                            if(io == null) io = new EntityIO(this, name, builder, allFieldSpecs, serializer, revDir.child(name));
                             if((mname.equals("read") || mname.equals("write"))){
                                 io.write(methBuilder, mname.equals("write"));
                             }
 
                             if((mname.equals("readSync") || mname.equals("writeSync"))){
-                                io.writeSync(methBuilder, mname.equals("writeSync"), allFields);
+                                io.writeSync(methBuilder, mname.equals("writeSync"), fieldsByName);
                             }
 
                             if((mname.equals("readSyncManual") || mname.equals("writeSyncManual"))){
@@ -680,7 +763,7 @@ public class EntityProcessor extends BaseProcessor{
                                 methBuilder.addStatement("lastUpdated = $T.millis()", Time.class);
                                 for(var v : syncedFields){
                                     methBuilder.addStatement("$L = $L", name(v) + EntityIO.lastSuffix, name(v) + EntityIO.targetSuffix);
-                                    methBuilder.addStatement("$L = $L", name(v), name(v) + EntityIO.targetSuffix);
+                                    methBuilder.addStatement("$L = $L", EntityIO.ref(columns, "", name(v)), name(v) + EntityIO.targetSuffix);
                                 }
                             }
 
@@ -688,8 +771,8 @@ public class EntityProcessor extends BaseProcessor{
                                 methBuilder.addStatement("updateSpacing = 16");
                                 methBuilder.addStatement("lastUpdated = $T.millis()", Time.class);
                                 for(var v : syncedFields){
-                                    methBuilder.addStatement("$L = $L", name(v) + EntityIO.lastSuffix, name(v));
-                                    methBuilder.addStatement("$L = $L", name(v) + EntityIO.targetSuffix, name(v));
+                                    methBuilder.addStatement("$L = $L", name(v) + EntityIO.lastSuffix, EntityIO.ref(columns, "", name(v)));
+                                    methBuilder.addStatement("$L = $L", name(v) + EntityIO.targetSuffix, EntityIO.ref(columns, "", name(v)));
                                 }
                             }
                         }
@@ -701,6 +784,14 @@ public class EntityProcessor extends BaseProcessor{
 
                         if(!standaloneWraps.isEmpty()) methBuilder.endControlFlow();
                         builder.addMethod(methBuilder.build());
+                        if(isViewer) io.syncViewer(mname + "_");
+                    }
+
+                    timings.end();
+
+                    if(io != null && isSync && !syncedFields.isEmpty()){
+                        io.writeSyncAll(ClassName.get(packageName, name), syncedFields);
+                        io.writeInterpolateAll(ClassName.get(packageName, name), syncedFields);
                     }
 
                     if(!serializeOverride){
@@ -726,12 +817,13 @@ public class EntityProcessor extends BaseProcessor{
                             if(v == null || isAny(v, STATIC, FINAL)) continue;
 
                             var desc = desc(v);
-                            resetBuilder.addStatement("this.$L = $L", spec.name, varInitializers.containsKey(desc)
-                                ? varInitializers.get(desc)
+                            resetBuilder.addStatement("$L = $L", EntityIO.ref(columns, "this", spec.name), varInitializers.containsKey(desc)
+                                ? initializer(v, varInitializers.get(desc))
                                 : spec.type.isPrimitive() ? getDefault(spec.type.toString()) : "null"
                             );
                         }
 
+                        if(io != null) io.resetDelta(resetBuilder);
                         builder.addMethod(resetBuilder.build());
                     }
 
@@ -749,9 +841,20 @@ public class EntityProcessor extends BaseProcessor{
                         .addMethod(MethodSpec.constructorBuilder().addModifiers(PROTECTED).build())
                         .addMethod(creator.build());
 
-                    definitions.add(new EntityDefinition(name, builder, def, typeIsBase ? null : baseClassType, defComps.values().toSeq(), allFieldSpecs.copy()));
+                    ObjectMap<String, FieldSpec> fieldSpecs = new ObjectMap<>(allFieldSpecs.size);
+                    for(var spec : allFieldSpecs) fieldSpecs.put(spec.name, spec);
+
+                    var definition = new EntityDefinition(name, builder, def, extend, defComps.values().toSeq(), fieldSpecs);
+                    definition.cacheable = cacheable;
+                    definition.columns.addAll(columns);
+
+                    definitions.add(definition);
                 }
 
+                timings.definition(null);
+                columns.clear();
+                columnOwner = null;
+
                 var registry = TypeSpec.classBuilder("EntityRegistry")
                     .addModifiers(PUBLIC, FINAL)
                     .addAnnotation(
@@ -856,12 +959,21 @@ public class EntityProcessor extends BaseProcessor{
                 definitions.flatMap(def -> def.components).distinct().each(registry::addOriginatingElement);
 
                 Seq<String> imports = new Seq<>();
+                ObjectSet<String> methodNames = new ObjectSet<>();
+                ObjectMap<ClassSymbol, Seq<String>> compMethodNames = new ObjectMap<>();
+                ObjectMap<TypeSpec.Builder, Members> builderMembers = new ObjectMap<>();
+                ObjectMap<ClassSymbol, Members> symbolMembers = new ObjectMap<>();
                 for(var def : definitions){
                     imports.clear();
 
                     var name = ClassName.get(packageName, def.name);
                     register.addStatement("register($S, $T.class, $T::create)", name.canonicalName(), name, name);
 
+                    if(def.source != null){
+                        write(name.canonicalName(), def.source, Seq.<Element>with(def.naming).addAll(def.components).toArray(Element.class));
+                        continue;
+                    }
+
                     def.builder.addMethod(
                         MethodSpec.methodBuilder("classId")
                             .addModifiers(PUBLIC)
@@ -877,15 +989,25 @@ public class EntityProcessor extends BaseProcessor{
                         def.builder.superclass(spec(ext));
                     }
 
-                    var methodNames = def.components.flatMap(t -> {
+                    methodNames.clear();
+                    for(var comp : def.components) methodNames.addAll(compMethodNames.get(comp, () -> {
                         Seq<String> out = new Seq<>();
-                        for(var s : t.getEnclosedElements()) if(s.getKind() == METHOD) out.add(sigName((MethodSymbol)s));
+                        for(var s : comp.getEnclosedElements()) if(s.getKind() == METHOD) out.add(sigName((MethodSymbol)s));
 
                         return out;
-                    }).asSet();
+                    }));
 
                     TypeSpec.Builder superclass = null;
-                    if(ext != null) superclass = baseClasses.get(name(ext));
+                    Members superMembers = null;
+                    if(ext != null){
+                        superclass = baseClasses.get(name(ext));
+
+                        var type = ext;
+                        var builder = superclass;
+                        superMembers = builder != null
+                            ? builderMembers.get(builder, () -> Members.of(builder))
+                            : symbolMembers.get(type, () -> Members.of(type));
+                    }
 
                     for(var comp : def.components){
                         imports.addAll(this.imports.get(comp));
@@ -902,7 +1024,7 @@ public class EntityProcessor extends BaseProcessor{
                                 var m = (MethodSymbol)s;
 
                                 var var = name(m);
-                                var field = def.fieldSpecs.find(f -> f.name.equals(var));
+                                var field = def.fieldSpecs.get(var);
                                 if(field == null || methodNames.contains(sigName(m))) continue;
 
                                 MethodSpec result = null;
@@ -911,7 +1033,7 @@ public class EntityProcessor extends BaseProcessor{
                                         .addModifiers(PUBLIC)
                                         .addAnnotation(spec(Override.class))
                                         .returns(spec(m.getReturnType()))
-                                        .addStatement("return $L", var)
+                                        .addStatement("return $L", EntityIO.ref(def.columns, "", var))
                                     .build();
                                 }else if(!Seq.with(field.annotations).contains(f -> f.type.toString().equals("@" + fName(ReadOnly.class)))){
                                     result = MethodSpec.methodBuilder(var)
@@ -919,37 +1041,16 @@ public class EntityProcessor extends BaseProcessor{
                                         .addAnnotation(spec(Override.class))
                                         .returns(TypeName.VOID)
                                         .addParameter(field.type, var)
-                                        .addStatement("this.$L = $L", var, var)
+                                        .addStatement("$L = $L", EntityIO.ref(def.columns, "this", var), var)
                                     .build();
                                 }
 
-                                if(result != null){
+                                if(result != null && superMembers != null && superMembers.fields.contains(var)){
                                     if(superclass != null){
-                                        var superField = Seq.with(superclass.fieldSpecs).find(f -> f.name.equals(var));
-                                        if(superField != null){
-                                            var ret = result.returnType;
-                                            var targetMethod = Seq.with(superclass.methodSpecs).find(e -> e.name.equals(var) && e.returnType.equals(ret));
-
-                                            if(targetMethod == null) superclass.addMethod(result);
-                                            continue;
-                                        }
-                                    }else if(ext != null){
-                                        VarSymbol superField = null;
-                                        for(var sym : ext.getEnclosedElements()){
-                                            if(sym.getKind() == FIELD && name(sym).equals(var)) superField = (VarSymbol)sym;
-                                        }
-
-                                        if(superField != null){
-                                            MethodSymbol targetMethod = null;
-                                            for(var sym : ext.getEnclosedElements()){
-                                                if(sym.getKind() == METHOD && name(sym).equals(var)){
-                                                    var msym = (MethodSymbol)sym;
-                                                    if(spec(msym.getReturnType()).equals(result.returnType)) targetMethod = msym;
-                                                }
-                                            }
-
-                                            if(targetMethod != null) continue;
-                                        }
+                                        if(superMembers.methods.add(Members.key(var, result.returnType))) superclass.addMethod(result);
+                                        continue;
+                                    }else if(superMembers.methods.contains(Members.key(var, result.returnType))){
+                                        continue;
                                     }
                                 }
 
@@ -958,17 +1059,22 @@ public class EntityProcessor extends BaseProcessor{
                         }
                     }
 
-                    write(def.builder, imports);
+                    // Hash again, since new revisions might've been added during generation.
+                    generate(def.builder, imports, def.cacheable ? source -> cache.put(def.name, cache.hash(def.name, def.naming, def.components, revStore.get(def.name)), source) : null);
                 }
 
                 for(var base : baseClasses.values()){
                     imports.clear();
                     for(var dep : baseDependencies.get(comp(Reflect.get(base, "name") + "Comp"))) imports.addAll(this.imports.get(dep));
 
-                    write(base, imports);
+                    generate(base, imports, null);
                 }
 
-                write(registry.addMethod(register.build()), null);
+                generate(registry.addMethod(register.build()), null, null);
+                if(hasColumns) generate(entityStore(), null, null);
+                generate();
+                revStore.flush();
+                if(errors == 0) cache.flush();
             }
 
             default -> throw new IllegalStateException("Unknown round: " + round);
@@ -982,27 +1088,17 @@ public class EntityProcessor extends BaseProcessor{
             if(setter != null && !hasSet && (anno(m, MethodPriority.class) == null || anno(m, MethodPriority.class).value() == 0)){
                 hasSet = true;
                 var blockName = baseName(setter.enclClass()).toLowerCase();
-                var wrapComp = tmpMethods.selectFrom(wraps, e -> baseName(comp(type(anno(e, Wrap.class)::block))).toLowerCase().equals(blockName));
+                var wrapComp = wraps.select(e -> baseName(comp(type(anno(e, Wrap.class)::block))).toLowerCase().equals(blockName));
 
                 boolean wrapped = !wrapComp.isEmpty();
-                if(wrapped){
-                    var format = new StringBuilder("if(this.$L()");
-                    tmpArgs.clear().add(name(wrapComp.first()));
-
-                    for(int i = 1; i < wrapComp.size; i++){
-                        format.append(" && this.$L()");
-                        tmpArgs.add(name(wrapComp.get(i)));
-                    }
+                if(wrapped) wrap(methBuilder, wrapComp);
 
-                    methBuilder.beginControlFlow(format.append(")").toString(), tmpArgs.toArray());
-                }
-
-                var insertComp = tmpMethods.selectFrom(inserts, e -> baseName(comp(type(anno(e, Insert.class)::block))).toLowerCase().equals(blockName));
+                var insertComp = inserts.select(e -> baseName(comp(type(anno(e, Insert.class)::block))).toLowerCase().equals(blockName));
                 for(var e : insertComp) if(!anno(e, Insert.class).after()) methBuilder.addStatement("this.$L()", name(e));
 
                 if(!isAny(m, ABSTRACT, NATIVE)){
                     if(writeBlock) methBuilder.beginControlFlow("$L:", blockName);
-                    methBuilder.addStatement("this.$L = $L", name(setter), name(setter));
+                    methBuilder.addStatement("$L = $L", EntityIO.ref(columns, "this", name(setter)), name(setter));
                     if(writeBlock) methBuilder.endControlFlow();
                 }
 
@@ -1011,28 +1107,18 @@ public class EntityProcessor extends BaseProcessor{
             }
 
             var blockName = baseName(m.enclClass()).toLowerCase();
-            var wrapComp = tmpMethods.selectFrom(wraps, e -> baseName(comp(type(anno(e, Wrap.class)::block))).toLowerCase().equals(blockName));
+            var wrapComp = wraps.select(e -> baseName(comp(type(anno(e, Wrap.class)::block))).toLowerCase().equals(blockName));
 
             boolean wrapped = !wrapComp.isEmpty();
-            if(wrapped){
-                var format = new StringBuilder("if(this.$L()");
-                tmpArgs.clear().add(name(wrapComp.first()));
-
-                for(int i = 1; i < wrapComp.size; i++){
-                    format.append(" && this.$L()");
-                    tmpArgs.add(name(wrapComp.get(i)));
-                }
-
-                methBuilder.beginControlFlow(format.append(")").toString(), tmpArgs.toArray());
-            }
+            if(wrapped) wrap(methBuilder, wrapComp);
 
-            var insertComp = tmpMethods.selectFrom(inserts, e -> baseName(comp(type(anno(e, Insert.class)::block))).toLowerCase().equals(blockName));
+            var insertComp = inserts.select(e -> baseName(comp(type(anno(e, Insert.class)::block))).toLowerCase().equals(blockName));
             for(var e : insertComp) if(!anno(e, Insert.class).after()) methBuilder.addStatement("this.$L()", name(e));
 
             var desc = desc(m);
             if(!isAny(m, ABSTRACT, NATIVE) && methodBlocks.containsKey(desc)){
-                var block = str(methodBlocks.get(desc), (writeBlock && anno(m, BreakAll.class) == null) ? blockName : null);
-                if(!block.replace("\n", "").replaceAll("\\s+", "").isEmpty()){
+                var block = print(m, (writeBlock && anno(m, BreakAll.class) == null) ? blockName : null);
+                if(!block.isBlank()){
                     if(writeBlock) methBuilder.beginControlFlow("$L:", blockName);
                     methBuilder.addCode(block);
                     if(writeBlock) methBuilder.endControlFlow();
@@ -1044,47 +1130,194 @@ public class EntityProcessor extends BaseProcessor{
         }
     }
 
-    protected String str(JCBlock block, String blockName){
-        var writer = new StringWriter();
-        try{
-            (blockName == null ? new Pretty(writer, true) : new Pretty(writer, true){
-                int innerLevel;
-
-                @Override
-                public void visitClassDef(JCClassDecl tree){
-                    innerLevel++;
-                    super.visitClassDef(tree);
-                    innerLevel--;
-                }
+    protected void wrap(MethodSpec.Builder methBuilder, Seq<MethodSymbol> wrappers){
+        var format = new StringBuilder("if(this.$L()");
+        var args = new Object[wrappers.size];
+        args[0] = name(wrappers.first());
 
-                @Override
-                public void visitLambda(JCLambda tree){
-                    innerLevel++;
-                    super.visitLambda(tree);
-                    innerLevel--;
-                }
+        for(int i = 1; i < wrappers.size; i++){
+            format.append(" && this.$L()");
+            args[i] = name(wrappers.get(i));
+        }
 
-                @Override
-                public void visitReturn(JCReturn tree){
-                    if(innerLevel > 0){
-                        super.visitReturn(tree);
-                    }else{
-                        try{
-                            print("break ");
-                            print(blockName);
-                            print(";");
-                        }catch(IOException e){
-                            throw new UncheckedIOException(e);
-                        }
-                    }
-                }
-            }).printStats(block.stats);
-        }catch(IOException ignored){}
-        return writer.toString()
-            .replaceAll("this\\.<(.*)>self\\(\\)", "this")
-            .replaceAll("self\\(\\)(?!\\s+instanceof)", "this")
-            .replaceAll(" yield ", "")
-            .replaceAll("/\\*missing\\*/", "var");
+        methBuilder.beginControlFlow(format.append(")").toString(), args);
+    }
+
+    /**
+     * Adds the nested {@code Store_} holding a primitive array per column into the entity type, the {@code STORE_}
+     * instance of it, and the {@code INDEX_} handle into it. The columns are initialized after every field declaration.
+     */
+    protected void columns(TypeSpec.Builder builder, String name, Seq<FieldSpec> fields, CodeBlock initializer){
+        int capacity = 64;
+        var storeType = ClassName.get(packageName, name, "Store_");
+
+        var store = TypeSpec.classBuilder("Store_")
+            .addModifiers(PUBLIC, STATIC, FINAL)
+            .superclass(ClassName.get(packageName, "EntityStore"))
+            .addMethod(
+                MethodSpec.constructorBuilder()
+                    .addStatement("super($L)", capacity)
+                .build()
+            );
+
+        var resize = MethodSpec.methodBuilder("resize")
+            .addModifiers(PROTECTED)
+            .addAnnotation(spec(Override.class))
+            .returns(TypeName.VOID)
+            .addParameter(TypeName.INT, "capacity");
+
+        for(var field : fields){
+            if(!columns.contains(field.name)) continue;
+
+            store.addField(FieldSpec.builder(ArrayTypeName.of(field.type), field.name, PUBLIC).initializer("new $T[$L]", field.type, capacity).build());
+            resize.addStatement("$L = $T.copyOf($L, capacity)", field.name, spec(Arrays.class), field.name);
+        }
+
+        builder
+            .addType(store.addMethod(resize.build()).build())
+            .addField(FieldSpec.builder(storeType, EntityIO.storeField, PUBLIC, STATIC, FINAL).initializer("new $T()", storeType).build())
+            .addField(FieldSpec.builder(TypeName.INT, EntityIO.indexField, PROTECTED, FINAL).initializer("$L.obtain(this)", EntityIO.storeField).build())
+            .addInitializerBlock(initializer);
+    }
+
+    /**
+     * @return The base class of every entity type's {@code Store_}, which hands out slots to entities. Slots are held
+     * through weak references, so that those of garbage-collected entities are reused; removed entities that are still
+     * referenced keep their values. Handing out slots is synchronized, but the column arrays are swapped without any
+     * synchronization of the accesses through {@code STORE_}, so entity types using it are single-threaded.
+     */
+    protected TypeSpec.Builder entityStore(){
+        var slot = ClassName.get(packageName, "EntityStore", "Slot");
+        return TypeSpec.classBuilder("EntityStore")
+            .addModifiers(PUBLIC, ABSTRACT)
+            .addField(FieldSpec.builder(TypeName.INT, "size", PUBLIC).build())
+            .addField(ArrayTypeName.of(slot), "slots", PROTECTED)
+            .addField(FieldSpec.builder(spec(IntSeq.class), "free", PROTECTED, FINAL).initializer("new $T()", spec(IntSeq.class)).build())
+            .addField(FieldSpec.builder(paramSpec(spec(ReferenceQueue.class), spec(Object.class)), "queue", PROTECTED, FINAL).initializer("new $T<>()", spec(ReferenceQueue.class)).build())
+            .addMethod(
+                MethodSpec.constructorBuilder()
+                    .addModifiers(PROTECTED)
+                    .addParameter(TypeName.INT, "capacity")
+                    .addStatement("slots = new $T[capacity]", slot)
+                .build()
+            )
+            .addMethod(
+                MethodSpec.methodBuilder("obtain")
+                    .addModifiers(PUBLIC, SYNCHRONIZED)
+                    .returns(TypeName.INT)
+                    .addParameter(spec(Object.class), "entity")
+                    .beginControlFlow("for($T ref; (ref = queue.poll()) != null;)", paramSpec(spec(Reference.class), WildcardTypeName.subtypeOf(Object.class)))
+                        .addStatement("int index = (($T)ref).index", slot)
+                        .addStatement("slots[index] = null")
+                        .addStatement("free.add(index)")
+                    .endControlFlow()
+                    .addStatement("int index")
+                    .beginControlFlow("if(!free.isEmpty())")
+                        .addStatement("index = free.pop()")
+                    .nextControlFlow("else")
+                        .beginControlFlow("if(size == slots.length)")
+                            .addStatement("slots = $T.copyOf(slots, size * 2)", spec(Arrays.class))
+                            .addStatement("resize(slots.length)")
+                        .endControlFlow()
+                        .addStatement("index = size++")
+                    .endControlFlow()
+                    .addStatement("slots[index] = new $T(entity, index, queue)", slot)
+                    .addStatement("return index")
+                .build()
+            )
+            .addMethod(
+                MethodSpec.methodBuilder("resize")
+                    .addModifiers(PROTECTED, ABSTRACT)
+                    .returns(TypeName.VOID)
+                    .addParameter(TypeName.INT, "capacity")
+                .build()
+            )
+            .addType(
+                TypeSpec.classBuilder("Slot")
+                    .addModifiers(PROTECTED, STATIC, FINAL)
+                    .superclass(paramSpec(spec(WeakReference.class), spec(Object.class)))
+                    .addField(TypeName.INT, "index", PUBLIC, FINAL)
+                    .addMethod(
+                        MethodSpec.constructorBuilder()
+                            .addParameter(spec(Object.class), "entity")
+                            .addParameter(TypeName.INT, "index")
+                            .addParameter(paramSpec(spec(ReferenceQueue.class), spec(Object.class)), "queue")
+                            .addStatement("super(entity, queue)")
+                            .addStatement("this.index = index")
+                        .build()
+                    )
+                .build()
+            );
+    }
+
+    /**
+     * Starts printing the method blocks of a definition's components in a fork-join pool, in every block name variant
+     * they may be printed with. Blocks already printed or being printed for a previous definition are skipped.
+     */
+    protected void printBlocks(Iterable<ClassSymbol> defComps){
+        var pool = ForkJoinPool.commonPool();
+        for(var comp : defComps){
+            for(var s : comp.getEnclosedElements()){
+                if(s.getKind() != METHOD) continue;
+
+                var m = (MethodSymbol)s;
+                var desc = desc(m);
+                var block = methodBlocks.get(desc);
+                if(block == null) continue;
+
+                printBlock(pool, desc, block, null);
+                if(m.getReturnType().getKind() == VOID && anno(m, BreakAll.class) == null) printBlock(pool, desc, block, baseName(comp).toLowerCase());
+            }
+        }
+    }
+
+    protected void printBlock(ForkJoinPool pool, String desc, JCBlock block, String blockName){
+        var key = desc + "@" + blockName;
+        if(!printedBlocks.containsKey(key) && !printTasks.containsKey(key)) printTasks.put(key, pool.submit(() -> str(block, blockName)));
+    }
+
+    /**
+     * @return The printed method block, memoized per method descriptor and block name for the whole processing. Waits for
+     * the block to be printed if it's {@linkplain #printBlocks(Iterable) being printed} in parallel.
+     */
+    protected String print(String desc, String blockName){
+        var key = desc + "@" + blockName;
+        return printedBlocks.get(key, () -> {
+            timings.begin("print");
+            var task = printTasks.remove(key);
+            var out = task == null ? str(methodBlocks.get(desc), blockName) : task.join();
+            timings.end();
+
+            return out;
+        });
+    }
+
+    /** @return The printed method block, with accesses to the current definition's columns rewritten if it has any. */
+    protected String print(MethodSymbol m, String blockName){
+        var desc = desc(m);
+        if(columns.isEmpty()) return print(desc, blockName);
+
+        return printedBlocks.get(desc + "@" + blockName + "@" + columnOwner, () -> {
+            timings.begin("print");
+            var out = BlockPrinter.print(methodBlocks.get(desc), blockName, columns, owners(m), Seq.with(m.params).map(BaseProcessor::name));
+            timings.end();
+
+            return out;
+        });
+    }
+
+    /** @return The printed field initializer, with accesses to the current definition's columns rewritten if it has any. */
+    protected String initializer(VariableElement v, JCExpression init){
+        return columns.isEmpty() ? init.toString() : BlockPrinter.print(init, columns, owners(v));
+    }
+
+    /** @return The simple names of the member's component and the current definition, which may qualify their {@code this}. */
+    protected ObjectSet<String> owners(Element member){
+        return ObjectSet.with(member.getEnclosingElement().getSimpleName().toString(), columnOwner);
+    }
+
+    protected String str(JCBlock block, String blockName){
+        return BlockPrinter.print(block, blockName);
     }
 
     protected boolean ext(ExecutableElement e, Iterable<ClassSymbol> defComps){
@@ -1223,18 +1456,58 @@ public class EntityProcessor extends BaseProcessor{
     public Set<String> getSupportedOptions(){
         Set<String> opts = new HashSet<>(super.getSupportedOptions());
         opts.add("revisionDir");
+        opts.add("pendingRevisionDir");
+        opts.add("cacheDir");
         return Collections.unmodifiableSet(opts);
     }
 
+    /** Field names and method keys of a superclass, so accessor generation doesn't rescan it per interface method. */
+    protected static class Members{
+        public final ObjectSet<String> fields = new ObjectSet<>(), methods = new ObjectSet<>();
+
+        public static Members of(TypeSpec.Builder builder){
+            var out = new Members();
+            for(var f : builder.fieldSpecs) out.fields.add(f.name);
+            for(var m : builder.methodSpecs) out.methods.add(key(m.name, m.returnType));
+
+            return out;
+        }
+
+        public static Members of(ClassSymbol type){
+            var out = new Members();
+            for(var s : type.getEnclosedElements()){
+                if(s.getKind() == FIELD){
+                    out.fields.add(name(s));
+                }else if(s.getKind() == METHOD){
+                    out.methods.add(key(name(s), spec(((MethodSymbol)s).getReturnType())));
+                }
+            }
+
+            return out;
+        }
+
+        public static String key(String name, TypeName returnType){
+            return name + ":" + returnType;
+        }
+    }
+
     public static class EntityDefinition{
         protected final String name;
         protected final TypeSpec.Builder builder;
         protected final Symbol naming;
         protected final @Nullable ClassSymbol extend;
         protected final Seq<ClassSymbol> components;
-        protected final Seq<FieldSpec> fieldSpecs;
+        /** Generated fields, keyed by their name. */
+        protected final ObjectMap<String, FieldSpec> fieldSpecs;
+
+        /** Whether the generated source may be stored in the generation cache. */
+        protected boolean cacheable;
+        /** The previously generated source, if the generation cache is hit. */
+        protected @Nullable String source;
+        /** Fields stored in the store's columns, as per {@link EntityDef#soa()}. */
+        protected ObjectSet<String> columns = new ObjectSet<>();
 
-        public EntityDefinition(String name, TypeSpec.Builder builder, Symbol naming, ClassSymbol extend, Seq<ClassSymbol> components, Seq<FieldSpec> fieldSpecs){
+        public EntityDefinition(String name, TypeSpec.Builder builder, Symbol naming, ClassSymbol extend, Seq<ClassSymbol> components, ObjectMap<String, FieldSpec> fieldSpecs){
             this.name = name;
             this.builder = builder;
             this.naming = naming;
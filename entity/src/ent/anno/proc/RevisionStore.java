@@ -0,0 +1,186 @@
+package ent.anno.proc;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+import ent.anno.*;
+import ent.anno.proc.EntityIO.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * Single-file text store of every entity type's revisions, located at {@code <revisionDir>/revisions.txt}. Each line
+ * is one revision, as tab-separated entity name, version, and field name and type pairs, sorted by entity name then
+ * version; branches adding revisions to different entity types touch different lines and merge cleanly. The lines are
+ * grouped by entity name up front, and each entity type's revisions are decoded the first time they're requested.
+ * Changes are written to a temporary file that then atomically replaces the store.
+ * <p>
+ * Legacy {@code <revisionDir>/<Entity>/<version>.json} directories are migrated into the store the first time their
+ * entity type is requested. They're left in place, as they're usually under source control, but are ignored once the
+ * store has the entity type.
+ * <p>
+ * If a pending directory is given, the revision directory is only ever read: the updated store is written into the
+ * pending directory instead, and is copied into the revision directory by the build after processing. This keeps the
+ * processor's inputs and outputs apart, so its task can be cached and relocated.
+ * @author GlFolker
+ */
+public class RevisionStore{
+    /** First line of the store; bump the version whenever the line format changes. */
+    public static final String header = "# EntityAnno revisions 1";
+
+    public final BaseProcessor proc;
+    public final Fi directory, file;
+    /** Where the updated store is written to instead of {@link #file}, or {@code null} to update it in place. */
+    public final @Nullable Fi pending;
+
+    /** Undecoded lines of each stored entity type. */
+    protected final ObjectMap<String, Seq<String>> index = new ObjectMap<>();
+    protected final ObjectMap<String, Seq<Revision>> loaded = new ObjectMap<>();
+    protected final ObjectSet<String> changed = new ObjectSet<>();
+    protected final Seq<Fi> migrated = new Seq<>();
+
+    public RevisionStore(BaseProcessor proc, Fi directory, @Nullable Fi pendingDir){
+        this.proc = proc;
+        this.directory = directory;
+        file = directory.child("revisions.txt");
+        pending = pendingDir == null ? null : pendingDir.child(file.name());
+
+        // Stale pending revisions would otherwise be committed again.
+        if(pending != null) pending.delete();
+        readIndex();
+    }
+
+    protected void readIndex(){
+        index.clear();
+        if(!file.exists()) return;
+
+        try(var reader = new BufferedReader(new InputStreamReader(file.read(), StandardCharsets.UTF_8))){
+            var first = reader.readLine();
+            if(first != null && !first.equals(header)) throw new IOException("Unsupported revision store header '" + first + "'.");
+
+            for(String line; (line = reader.readLine()) != null;){
+                if(line.isBlank()) continue;
+
+                int split = line.indexOf('\t');
+                if(split == -1) throw new IOException("Malformed revision '" + line + "'.");
+
+                index.get(line.substring(0, split), Seq::new).add(line);
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException("Couldn't read revision store " + file.absolutePath(), e);
+        }
+    }
+
+    /** @return The revisions of the entity type, sorted by version. Empty if the entity type has none yet. */
+    public Seq<Revision> get(String name){
+        return loaded.get(name, () -> {
+            Seq<Revision> out = new Seq<>();
+
+            var lines = index.get(name);
+            if(lines != null){
+                for(var line : lines) out.add(decode(line).proc(proc));
+            }else{
+                var legacy = directory.child(name);
+                if(legacy.isDirectory()){
+                    for(var fi : legacy.list()){
+                        if(fi.extEquals("json")) out.add(EntityIO.json.fromJson(Revision.class, fi).proc(proc));
+                    }
+
+                    if(out.any()){
+                        migrated.add(legacy);
+                        changed.add(name);
+                    }
+                }
+            }
+
+            out.sort(r -> r.version);
+            return out;
+        });
+    }
+
+    /** Appends a new revision to the entity type, to be persisted in {@link #flush()}. */
+    public void add(String name, Revision revision){
+        get(name).add(revision);
+        changed.add(name);
+    }
+
+    /**
+     * Atomically rewrites the store if any revisions were added or migrated. If there's a pending directory, the store is
+     * written there instead and nothing in the revision directory is touched.
+     */
+    public void flush(){
+        if(changed.isEmpty()) return;
+
+        var target = pending == null ? file : pending;
+        try{
+            var names = new Seq<String>();
+            for(var name : index.keys()) names.add(name);
+            for(var name : changed) if(!index.containsKey(name)) names.add(name);
+            names.sort();
+
+            target.parent().mkdirs();
+
+            var temp = target.sibling(target.name() + ".tmp");
+            try(var out = new BufferedWriter(new OutputStreamWriter(temp.write(), StandardCharsets.UTF_8))){
+                out.write(header);
+                out.write('\n');
+
+                for(var name : names){
+                    // Unchanged lines are copied as-is, without decoding them.
+                    if(!changed.contains(name)){
+                        for(var line : index.get(name)){
+                            out.write(line);
+                            out.write('\n');
+                        }
+                    }else{
+                        for(var rev : get(name)){
+                            out.write(encode(name, rev));
+                            out.write('\n');
+                        }
+                    }
+                }
+            }
+
+            try{
+                Files.move(temp.file().toPath(), target.file().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch(AtomicMoveNotSupportedException e){
+                Files.move(temp.file().toPath(), target.file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException("Couldn't write revision store " + target.absolutePath(), e);
+        }
+
+        if(!migrated.isEmpty()){
+            Log.info("Migrated @ legacy revision director@ into @; @ can be deleted.", migrated.size, migrated.size == 1 ? "y" : "ies", target.absolutePath(), migrated.size == 1 ? "it" : "they");
+            migrated.clear();
+        }
+
+        // The committed store is left as-is, so later flushes have to rewrite everything changed since it was read.
+        if(pending != null){
+            Log.info("Wrote @ pending entity revision change@ into @.", changed.size, changed.size == 1 ? "" : "s", pending.absolutePath());
+            return;
+        }
+
+        changed.clear();
+        readIndex();
+    }
+
+    protected static String encode(String name, Revision revision){
+        var out = new StringBuilder(name).append('\t').append(revision.version);
+        for(var field : revision.fields) out.append('\t').append(field.name).append('\t').append(field.type);
+
+        return out.toString();
+    }
+
+    protected static Revision decode(String line){
+        var parts = line.split("\t", -1);
+        if(parts.length < 2 || parts.length % 2 != 0) throw new IllegalArgumentException("Malformed revision '" + line + "'.");
+
+        Seq<RevisionField> fields = new Seq<>(parts.length / 2 - 1);
+        for(int i = 2; i < parts.length; i += 2) fields.add(new RevisionField(parts[i], parts[i + 1]));
+
+        return new Revision(Integer.parseInt(parts[1]), fields);
+    }
+}
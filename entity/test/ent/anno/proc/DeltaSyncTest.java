@@ -0,0 +1,160 @@
+package ent.anno.proc;
+
+import arc.files.*;
+import mindustry.gen.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+import sun.misc.*;
+
+import java.nio.file.*;
+
+import static ent.anno.proc.TestMod.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Syncs a compiled {@code @EntityDef(deltaSync = true)} entity type to players, checking what each sync sends and that
+ * the receiving entity ends up with the sender's values.
+ * @author GlFolker
+ */
+public class DeltaSyncTest{
+    /** A bitmask byte followed by two ints and a float. */
+    static final int whole = 1 + 4 + 4 + 4, mask = 1;
+
+    static TestMod mod;
+
+    @BeforeAll
+    static void compile(@TempDir Path dir){
+        mod = new TestMod(new Fi(dir.toFile())).comp("DeltaComp", """
+            @EntityComponent
+            @EntityDef(value = {Deltac.class, Syncc.class}, deltaSync = true, resyncInterval = 4)
+            abstract class DeltaComp implements Syncc{
+                int a, b;
+                @SyncField(true) float x;
+            }
+            """).compile();
+    }
+
+    Object from, to;
+    Player viewer;
+
+    @BeforeEach
+    void create(){
+        from = mod.create("Delta");
+        to = mod.create("Delta");
+        viewer = player();
+
+        call(from, "a", 1);
+        call(from, "b", 2);
+        call(from, "x", 3f);
+    }
+
+    @Test
+    void sendsChangedFields(){
+        assertEquals(whole, sync(from, to, viewer));
+        assertValues(to, 1, 2, 3f);
+
+        call(from, "a", 5);
+        assertEquals(mask + 4, sync(from, to, viewer));
+        assertValues(to, 5, 2, 3f);
+
+        call(from, "x", 6f);
+        assertEquals(mask + 4 + 4, sync(from, to, viewer));
+        assertValues(to, 5, 2, 6f);
+    }
+
+    @Test
+    void keepsFieldsChangedBack(){
+        sync(from, to, viewer);
+
+        call(from, "a", 5);
+        sync(from, to, viewer);
+
+        // Back to the value last sent whole, but the viewer has since been sent another one.
+        call(from, "a", 1);
+        assertEquals(mask + 4, sync(from, to, viewer));
+        assertValues(to, 1, 2, 3f);
+    }
+
+    @Test
+    void recoversLostSyncs(){
+        sync(from, to, viewer);
+
+        // The snapshot carrying the change never arrives.
+        call(from, "a", 5);
+        assertFalse((boolean)call(from, "isSyncHidden", viewer));
+        write(from, "writeSync");
+
+        assertEquals(mask + 4, sync(from, to, viewer));
+        assertValues(to, 5, 2, 3f);
+    }
+
+    @Test
+    void resyncsWhole(){
+        sync(from, to, viewer);
+        call(from, "b", 7);
+        for(int i = 1; i < 4; i++) assertEquals(mask + 4, sync(from, to, viewer));
+
+        // Every field is sent again, after which only fields changed since are.
+        assertEquals(whole, sync(from, to, viewer));
+        assertEquals(mask, sync(from, to, viewer));
+        assertValues(to, 1, 7, 3f);
+    }
+
+    @Test
+    void tracksViewersSeparately(){
+        var other = player();
+        var otherTo = mod.create("Delta");
+
+        sync(from, to, viewer);
+        call(from, "a", 5);
+        assertEquals(mask + 4, sync(from, to, viewer));
+
+        assertEquals(whole, sync(from, otherTo, other));
+        assertValues(otherTo, 5, 2, 3f);
+
+        assertEquals(mask + 4, sync(from, to, viewer));
+        assertEquals(mask, sync(from, otherTo, other));
+    }
+
+    @Test
+    void sendsWholeWithoutViewer(){
+        sync(from, to, viewer);
+        call(from, "a", 5);
+
+        assertEquals(whole, sync(from, to, null));
+        assertValues(to, 5, 2, 3f);
+    }
+
+    /** Syncs as Mindustry's entity snapshots do, asking whether the entity is hidden from the viewer first, if any. */
+    static int sync(Object from, Object to, Player viewer){
+        if(viewer != null) assertFalse((boolean)call(from, "isSyncHidden", viewer));
+
+        var bytes = write(from, "writeSync");
+        read(to, "readSync", bytes);
+        call(to, "snapSync");
+        return bytes.length;
+    }
+
+    static void assertValues(Object entity, int a, int b, float x){
+        assertEquals(a, (int)call(entity, "a"));
+        assertEquals(b, (int)call(entity, "b"));
+        assertEquals(x, (float)call(entity, "x"));
+    }
+
+    /** Players can't be created without a loaded game and only serve as keys here, so they're allocated as-is. */
+    static Player player(){
+        try{
+            var unsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            var player = (Player)((Unsafe)unsafe.get(null)).allocateInstance(Player.class);
+
+            // Sync states of players that aren't added are dropped.
+            var added = Player.class.getDeclaredField("added");
+            added.setAccessible(true);
+            added.setBoolean(player, true);
+            return player;
+        }catch(ReflectiveOperationException e){
+            throw new AssertionError(e);
+        }
+    }
+}
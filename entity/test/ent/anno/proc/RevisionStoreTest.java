@@ -0,0 +1,141 @@
+package ent.anno.proc;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.io.*;
+import ent.anno.proc.EntityIO.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+import java.io.*;
+import java.nio.file.*;
+
+import static ent.anno.proc.TestMod.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Migrates legacy revision directories into the {@link RevisionStore}, both directly and through a compiled mod whose
+ * entity type reads its older revisions.
+ * @author GlFolker
+ */
+public class RevisionStoreTest{
+    @TempDir
+    Path temp;
+
+    Fi dir;
+
+    @BeforeEach
+    void init(){
+        dir = new Fi(temp.toFile());
+    }
+
+    @Test
+    void migratesLegacyDirectories(){
+        var revisions = dir.child("revisions");
+        legacy(revisions, "Rev", new Revision(0, Seq.with(new RevisionField("b", "float"))));
+        legacy(revisions, "Rev", new Revision(1, Seq.with(new RevisionField("a", "int"), new RevisionField("b", "float"))));
+
+        var store = new RevisionStore(null, revisions, null);
+        assertEquals(Seq.with(0, 1), store.get("Rev").map(r -> r.version));
+        store.flush();
+
+        assertLines(revisions.child("revisions.txt"),
+            "Rev\t0\tb\tfloat",
+            "Rev\t1\ta\tint\tb\tfloat"
+        );
+        assertTrue(revisions.child("Rev").isDirectory(), "Legacy directories must be kept.");
+
+        // The store has the entity type now, so the legacy directory is ignored.
+        revisions.child("Rev").child("0.json").delete();
+        var reread = new RevisionStore(null, revisions, null).get("Rev");
+        assertEquals(Seq.with(0, 1), reread.map(r -> r.version));
+        assertEquals(Seq.with("a", "b"), reread.peek().fields.map(f -> f.name));
+        assertEquals(Seq.with("int", "float"), reread.peek().fields.map(f -> f.type));
+    }
+
+    @Test
+    void keepsUnchangedLines(){
+        var revisions = dir.child("revisions");
+        revisions.child("revisions.txt").writeString(RevisionStore.header + "\nZed\t0\tz\tint\nAlpha\t0\n");
+
+        var store = new RevisionStore(null, revisions, null);
+        store.add("Mid", new Revision(0, Seq.with(new RevisionField("m", "float"))));
+        store.flush();
+
+        // Lines are sorted by entity name, but the other types' lines aren't rewritten.
+        assertLines(revisions.child("revisions.txt"),
+            "Alpha\t0",
+            "Mid\t0\tm\tfloat",
+            "Zed\t0\tz\tint"
+        );
+    }
+
+    @Test
+    void writesIntoPendingDirectory(){
+        var revisions = dir.child("revisions");
+        var pending = dir.child("pending");
+        legacy(revisions, "Rev", new Revision(0, Seq.with(new RevisionField("b", "float"))));
+
+        var store = new RevisionStore(null, revisions, pending);
+        store.add("Rev", new Revision(1, Seq.with(new RevisionField("a", "int"))));
+        store.flush();
+
+        assertFalse(revisions.child("revisions.txt").exists(), "The revision directory must only be read.");
+        assertLines(pending.child("revisions.txt"),
+            "Rev\t0\tb\tfloat",
+            "Rev\t1\ta\tint"
+        );
+    }
+
+    @Test
+    void readsLegacyRevisions(){
+        var mod = new TestMod(dir.child("mod"));
+        legacy(mod.revisionDir, "Rev", new Revision(0, Seq.with(new RevisionField("b", "float"), new RevisionField("gone", "int"))));
+
+        mod.comp("RevComp", """
+            @EntityComponent
+            @EntityDef(Revc.class)
+            abstract class RevComp implements Entityc{
+                int a;
+                float b;
+            }
+            """).compile();
+
+        assertLines(mod.pendingDir.child("revisions.txt"),
+            "Rev\t0\tb\tfloat\tgone\tint",
+            "Rev\t1\ta\tint\tb\tfloat"
+        );
+        assertTrue(mod.revisionDir.child("Rev").isDirectory(), "Legacy directories must be kept.");
+        assertFalse(mod.revisionDir.child("revisions.txt").exists(), "The revision directory must only be read.");
+
+        // Saved with the legacy revision; removed fields are skipped.
+        var bytes = new ByteArrayOutputStream();
+        var out = new Writes(new DataOutputStream(bytes));
+        out.s(0);
+        out.f(2.5f);
+        out.i(99);
+
+        var old = mod.create("Rev");
+        read(old, "read", bytes.toByteArray());
+        assertEquals(0, (int)call(old, "a"));
+        assertEquals(2.5f, (float)call(old, "b"));
+
+        var current = mod.create("Rev");
+        call(current, "a", 4);
+        call(current, "b", 1.5f);
+
+        var copy = mod.create("Rev");
+        read(copy, "read", write(current, "write"));
+        assertEquals(4, (int)call(copy, "a"));
+        assertEquals(1.5f, (float)call(copy, "b"));
+    }
+
+    static void legacy(Fi revisions, String name, Revision revision){
+        revisions.child(name).child(revision.version + ".json").writeString(EntityIO.json.toJson(revision));
+    }
+
+    static void assertLines(Fi file, String... lines){
+        assertTrue(file.exists(), file + " must exist.");
+        assertEquals(RevisionStore.header + "\n" + String.join("\n", lines) + "\n", file.readString());
+    }
+}
@@ -0,0 +1,141 @@
+package ent.anno.proc;
+
+import arc.files.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+import java.nio.file.*;
+
+import static ent.anno.proc.TestMod.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs component methods of a compiled {@code @EntityDef(soa = true)} entity type that access its columns past lambda
+ * parameters, shadowing variables, and local and anonymous classes.
+ * @author GlFolker
+ */
+public class SoaTest{
+    static TestMod mod;
+
+    @BeforeAll
+    static void compile(@TempDir Path dir){
+        mod = new TestMod(new Fi(dir.toFile())).comp("ColumnComp", """
+            @EntityComponent
+            @EntityDef(value = Columnc.class, soa = true)
+            abstract class ColumnComp implements Entityc{
+                float x;
+                int hits = 1;
+
+                float lambdaParam(float by){
+                    java.util.function.DoubleUnaryOperator twice = x -> x * 2d;
+                    return (float)twice.applyAsDouble(by) + x;
+                }
+
+                float typedLambdaParam(float by){
+                    java.util.function.DoubleUnaryOperator twice = (double x) -> x * 2d;
+                    return (float)twice.applyAsDouble(by) + x;
+                }
+
+                float lambdaBody(float by){
+                    java.util.function.DoubleUnaryOperator plus = value -> {
+                        float x = 10f;
+                        return value + x;
+                    };
+                    return (float)plus.applyAsDouble(by) + x;
+                }
+
+                float paramShadow(float x){
+                    return x + this.x;
+                }
+
+                float localShadow(){
+                    float x = 10f;
+                    return x + this.x;
+                }
+
+                float blockScope(){
+                    {
+                        float x = 10f;
+                        hits += (int)x;
+                    }
+
+                    return x;
+                }
+
+                float forScope(){
+                    float sum = 0f;
+                    for(float x : new float[]{10f, 20f}) sum += x;
+                    return sum + x;
+                }
+
+                float anonymous(){
+                    var inner = new Object(){
+                        float x = 100f;
+
+                        float get(){
+                            return x + ColumnComp.this.x;
+                        }
+                    };
+
+                    return inner.get();
+                }
+
+                float local(){
+                    class Local{
+                        float x = 100f;
+
+                        float get(){
+                            return x + ColumnComp.this.x;
+                        }
+                    }
+
+                    return new Local().get();
+                }
+            }
+            """).compile();
+    }
+
+    Object entity;
+
+    @BeforeEach
+    void create(){
+        entity = mod.create("Column");
+        call(entity, "x", 3f);
+    }
+
+    @Test
+    void storesColumnsPerEntity(){
+        var other = mod.create("Column");
+        call(other, "x", 7f);
+
+        assertEquals(3f, (float)call(entity, "x"));
+        assertEquals(7f, (float)call(other, "x"));
+        assertEquals(1, (int)call(other, "hits"));
+    }
+
+    @Test
+    void skipsLambdaParameters(){
+        assertEquals(13f, (float)call(entity, "lambdaParam", 5f));
+        assertEquals(13f, (float)call(entity, "typedLambdaParam", 5f));
+        assertEquals(18f, (float)call(entity, "lambdaBody", 5f));
+    }
+
+    @Test
+    void skipsShadowingVariables(){
+        assertEquals(4f, (float)call(entity, "paramShadow", 1f));
+        assertEquals(13f, (float)call(entity, "localShadow"));
+        assertEquals(33f, (float)call(entity, "forScope"));
+    }
+
+    @Test
+    void rewritesAfterScopeEnds(){
+        assertEquals(3f, (float)call(entity, "blockScope"));
+        assertEquals(11, (int)call(entity, "hits"));
+    }
+
+    @Test
+    void rewritesQualifiedThisOnly(){
+        assertEquals(103f, (float)call(entity, "anonymous"));
+        assertEquals(103f, (float)call(entity, "local"));
+    }
+}
@@ -0,0 +1,90 @@
+package ent.anno.proc;
+
+import arc.files.*;
+import arc.math.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+
+import java.nio.file.*;
+
+import static ent.anno.proc.TestMod.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Syncs {@code @SyncField(precision = ...)} and {@code @SyncField(half = true)} fields of a compiled entity type, at and
+ * beyond the bounds of their ranges.
+ * @author GlFolker
+ */
+public class SyncQuantizationTest{
+    static TestMod mod;
+
+    @BeforeAll
+    static void compile(@TempDir Path dir){
+        mod = new TestMod(new Fi(dir.toFile())).comp("QuantComp", """
+            @EntityComponent
+            @EntityDef({Quantc.class, Syncc.class})
+            abstract class QuantComp implements Syncc{
+                @SyncField(value = true, precision = 0.5f, min = -10f, max = 10f) float linear;
+                @SyncField(value = false, precision = 1f, min = 0f, max = 360f) float angle;
+                @SyncField(value = true, precision = 1f, min = 0f, max = 255f) float fullByte;
+                @SyncField(value = true, precision = 0.01f, min = 0f, max = 600f) float fullShort;
+                @SyncField(value = true, half = true) float half;
+            }
+            """).compile();
+    }
+
+    @Test
+    void picksSmallestWidth(){
+        // A byte, a short for 360 steps, a byte for exactly 255 steps, a short for 60000 steps, and a half.
+        assertEquals(1 + 2 + 1 + 2 + 2, write(mod.create("Quant"), "writeSync").length);
+    }
+
+    @Test
+    void clampsLinear(){
+        assertEquals(-10f, sync("linear", -10f));
+        assertEquals(10f, sync("linear", 10f));
+        assertEquals(3f, sync("linear", 3.2f));
+        assertEquals(3.5f, sync("linear", 3.3f));
+        assertEquals(10f, sync("linear", 15f));
+        assertEquals(-10f, sync("linear", -15f));
+    }
+
+    @Test
+    void wrapsAngles(){
+        assertEquals(0f, Angles.angleDist(sync("angle", 0f), 0f), 0.01f);
+        assertEquals(0f, Angles.angleDist(sync("angle", 370f), 10f), 0.01f);
+        assertEquals(0f, Angles.angleDist(sync("angle", -90f), 270f), 0.01f);
+        assertEquals(0f, Angles.angleDist(sync("angle", 359.7f), 0f), 0.01f);
+    }
+
+    @Test
+    void readsUnsigned(){
+        assertEquals(0f, sync("fullByte", 0f));
+        assertEquals(200f, sync("fullByte", 200f));
+        assertEquals(255f, sync("fullByte", 255f));
+
+        assertEquals(327.68f, sync("fullShort", 327.68f), 0.0051f);
+        assertEquals(599.99f, sync("fullShort", 599.99f), 0.0051f);
+        assertEquals(600f, sync("fullShort", 600f), 0.0051f);
+    }
+
+    @Test
+    void roundsHalves(){
+        assertEquals(1.5f, sync("half", 1.5f));
+        assertEquals(-65504f, sync("half", -65504f));
+        assertEquals(Float.POSITIVE_INFINITY, sync("half", 70000f));
+        assertEquals(0f, sync("half", 1e-8f));
+        assertTrue(Float.isNaN(sync("half", Float.NaN)));
+    }
+
+    /** @return The value of the field after syncing it from one entity to another. */
+    static float sync(String field, float value){
+        var from = mod.create("Quant");
+        var to = mod.create("Quant");
+
+        call(from, field, value);
+        read(to, "readSync", write(from, "writeSync"));
+        call(to, "snapSync");
+        return call(to, field);
+    }
+}
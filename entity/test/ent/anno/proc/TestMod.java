@@ -0,0 +1,264 @@
+package ent.anno.proc;
+
+import arc.files.*;
+import arc.util.io.*;
+
+import javax.tools.*;
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**
+ * A mod compiled with {@link EntityProcessor} through the in-process system Java compiler, so tests may assert on the
+ * generated sources and run the generated entity types. Stand-ins for vanilla's {@code EntityComp} and {@code SyncComp}
+ * are put into the fetch package, so no vanilla sources have to be fetched.
+ * @author GlFolker
+ */
+public class TestMod{
+    public static final String
+        compPackage = "test.entities.comp",
+        genPackage = "test.gen",
+        fetchPackage = "test.fetched";
+
+    public final Fi dir, srcDir, genDir, outDir, revisionDir, pendingDir, cacheDir;
+
+    protected URLClassLoader loader;
+
+    public TestMod(Fi dir){
+        this.dir = dir;
+        srcDir = dir.child("src");
+        genDir = dir.child("generated");
+        outDir = dir.child("out");
+        revisionDir = dir.child("revisions");
+        pendingDir = dir.child("pending");
+        cacheDir = dir.child("cache");
+
+        source(fetchPackage, "EntityComp", entityComp());
+        source(fetchPackage, "SyncComp", syncComp());
+    }
+
+    /** Adds a component into the component package, with the annotations and generated types imported. */
+    public TestMod comp(String name, String body){
+        return source(compPackage, name,
+            "package " + compPackage + ";\n\n" +
+            "import arc.util.io.*;\n" +
+            "import ent.anno.Annotations.*;\n" +
+            "import mindustry.gen.*;\n" +
+            "import " + genPackage + ".*;\n\n" +
+            body
+        );
+    }
+
+    public TestMod source(String pack, String name, String source){
+        srcDir.child(pack.replace('.', '/')).child(name + ".java").writeString(source);
+        return this;
+    }
+
+    /** Compiles the mod, processing it first; fails with the compiler's errors, if any. */
+    public TestMod compile(){
+        genDir.mkdirs();
+        outDir.mkdirs();
+
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        if(compiler == null) throw new IllegalStateException("No system Java compiler; run the tests with a JDK.");
+
+        var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        boolean success;
+
+        try(var files = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)){
+            var task = compiler.getTask(null, files, diagnostics, List.of(
+                "-nowarn", "-encoding", "UTF-8",
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", outDir.absolutePath(),
+                "-s", genDir.absolutePath(),
+                "-AmodName=test",
+                "-AgenPackage=" + genPackage,
+                "-AfetchPackage=" + fetchPackage,
+                "-ArevisionDir=" + revisionDir.absolutePath(),
+                "-ApendingRevisionDir=" + pendingDir.absolutePath(),
+                "-AcacheDir=" + cacheDir.absolutePath()
+            ), null, files.getJavaFileObjectsFromFiles(srcDir.findAll(f -> f.extEquals("java")).map(Fi::file)));
+
+            task.setProcessors(List.of(new EntityProcessor()));
+            success = task.call();
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+
+        var errors = new StringBuilder();
+        for(var diagnostic : diagnostics.getDiagnostics()){
+            if(diagnostic.getKind() == Diagnostic.Kind.ERROR) errors.append('\n').append(diagnostic);
+        }
+
+        if(!success || errors.length() > 0) throw new AssertionError("Compiling the test mod failed:" + errors);
+        return this;
+    }
+
+    /** @return The source of the generated type. */
+    public String generated(String name){
+        return genDir.child(genPackage.replace('.', '/')).child(name + ".java").readString();
+    }
+
+    /** @return The compiled generated type. */
+    public Class<?> type(String name){
+        try{
+            if(loader == null) loader = new URLClassLoader(new URL[]{outDir.file().toURI().toURL()}, TestMod.class.getClassLoader());
+            return Class.forName(genPackage + "." + name, true, loader);
+        }catch(MalformedURLException | ClassNotFoundException e){
+            throw new AssertionError(e);
+        }
+    }
+
+    /** @return A new instance of the generated entity type, from its {@code create()}. */
+    public Object create(String name){
+        return invoke(type(name), null, "create");
+    }
+
+    /** @return The result of the entity's public method with the given name and amount of parameters. */
+    @SuppressWarnings("unchecked")
+    public static <T> T call(Object target, String name, Object... args){
+        return (T)invoke(target.getClass(), target, name, args);
+    }
+
+    protected static Object invoke(Class<?> type, Object target, String name, Object... args){
+        for(var method : type.getMethods()){
+            if(!method.getName().equals(name) || method.getParameterCount() != args.length) continue;
+
+            try{
+                return method.invoke(target, args);
+            }catch(IllegalAccessException e){
+                throw new AssertionError(e);
+            }catch(InvocationTargetException e){
+                if(e.getCause() instanceof RuntimeException r) throw r;
+                if(e.getCause() instanceof Error r) throw r;
+                throw new AssertionError(e.getCause());
+            }
+        }
+
+        throw new AssertionError("No method " + name + " with " + args.length + " parameter(s) in " + type.getName() + ".");
+    }
+
+    /** @return What the entity's method taking {@link Writes} writes, e.g. {@code writeSync}. */
+    public static byte[] write(Object entity, String method){
+        var bytes = new ByteArrayOutputStream();
+        call(entity, method, new Writes(new DataOutputStream(bytes)));
+        return bytes.toByteArray();
+    }
+
+    /** Calls the entity's method taking {@link Reads} with the bytes, e.g. {@code readSync}, and checks it reads them all. */
+    public static void read(Object entity, String method, byte[] bytes){
+        var in = new ByteArrayInputStream(bytes);
+        call(entity, method, new Reads(new DataInputStream(in)));
+        if(in.available() != 0) throw new AssertionError(method + " left " + in.available() + " of " + bytes.length + " byte(s) unread.");
+    }
+
+    protected static String entityComp(){
+        return String.format("""
+            package %s;
+
+            import arc.util.io.*;
+            import ent.anno.Annotations.*;
+            import mindustry.gen.*;
+
+            @EntityComponent(vanilla = true)
+            @EntityBaseComponent
+            abstract class EntityComp{
+                private transient boolean added;
+                transient int id = EntityGroup.nextId();
+
+                boolean isAdded(){
+                    return added;
+                }
+
+                void update(){}
+
+                void remove(){
+                    added = false;
+                }
+
+                void add(){
+                    added = true;
+                }
+
+                boolean isLocal(){
+                    return false;
+                }
+
+                boolean isRemote(){
+                    return false;
+                }
+
+                boolean isNull(){
+                    return false;
+                }
+
+                <T extends Entityc> T self(){
+                    return (T)this;
+                }
+
+                <T> T as(){
+                    return (T)this;
+                }
+
+                @InternalImpl
+                abstract int classId();
+
+                @InternalImpl
+                abstract boolean serialize();
+
+                @MethodPriority(1)
+                void read(Reads read){
+                    afterRead();
+                }
+
+                void write(Writes write){}
+
+                void afterRead(){}
+
+                void afterAllRead(){}
+            }
+            """, fetchPackage);
+    }
+
+    /** Unlike vanilla's, the stand-in doesn't interpolate or notify clients, as there's no running game. */
+    protected static String syncComp(){
+        return String.format("""
+            package %s;
+
+            import arc.util.io.*;
+            import ent.anno.Annotations.*;
+            import mindustry.gen.*;
+
+            import java.nio.*;
+
+            @EntityComponent(vanilla = true)
+            abstract class SyncComp implements Entityc{
+                transient long lastUpdated, updateSpacing;
+
+                void snapSync(){}
+
+                void snapInterpolation(){}
+
+                void readSync(Reads read){}
+
+                void writeSync(Writes write){}
+
+                void readSyncManual(FloatBuffer buffer){}
+
+                void writeSyncManual(FloatBuffer buffer){}
+
+                void afterSync(){}
+
+                void interpolate(){}
+
+                boolean isSyncHidden(Player player){
+                    return false;
+                }
+
+                void handleSyncHidden(){}
+            }
+            """, fetchPackage);
+    }
+}
@@ -5,3 +5,4 @@ if(JavaVersion.current().ordinal < JavaVersion.VERSION_17.ordinal){
 rootProject.name = "EntityAnno"
 include(":downgrader")
 include(":entity")
+include(":benchmark")
@@ -0,0 +1,98 @@
+package ent;
+
+import org.gradle.api.*;
+import org.gradle.api.file.*;
+import org.gradle.api.provider.*;
+import org.gradle.api.tasks.*;
+import org.gradle.work.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Commits entity revisions added by the annotation processors into the revision directory. The processors only read
+ * the revision directory and write the updated store into a pending directory, whose files this task then moves into
+ * place; the store's format is only known to the processors. Nothing is committed unless the processing task has
+ * {@linkplain #successMarker(Provider, boolean) marked} itself as succeeded, as it may have failed after processing.
+ * @author GlFolker
+ */
+@DisableCachingByDefault(because = "Copies files into a source-controlled directory")
+public abstract class CommitRevisionsTask extends DefaultTask{
+    /** Name of the file in the pending directory that's only present if the processing task succeeded. */
+    public static final String successMarker = "succeeded";
+
+    /** @return The directory the processors write the updated revision store into. */
+    @SkipWhenEmpty
+    @IgnoreEmptyDirectories
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @InputFiles
+    public abstract DirectoryProperty getPendingDir();
+
+    /** @return The location to store entity revision data. */
+    @OutputDirectory
+    public abstract DirectoryProperty getRevisionDir();
+
+    @TaskAction
+    public void commit() throws IOException{
+        var pending = getPendingDir().get().getAsFile();
+        if(!new File(pending, successMarker).isFile()){
+            getLogger().lifecycle("Not committing entity revisions, as compilation didn't succeed.");
+            return;
+        }
+
+        var dir = getRevisionDir().get().getAsFile().toPath();
+        Files.createDirectories(dir);
+
+        var files = pending.listFiles(file -> file.isFile() && !file.getName().equals(successMarker));
+        if(files == null) return;
+        Arrays.sort(files);
+
+        for(var file : files){
+            var target = dir.resolve(file.getName());
+            var temp = dir.resolve(file.getName() + ".tmp");
+
+            Files.copy(file.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+            try{
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch(AtomicMoveNotSupportedException e){
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            getLogger().lifecycle("Committed entity revisions into {}.", target);
+        }
+    }
+
+    /**
+     * @return An action that deletes the success marker from the pending directory, to run first in the processing task,
+     * or creates it, to run last; task actions after a failed one don't run.
+     */
+    public static Action<Task> successMarker(Provider<Directory> pendingDir, boolean succeeded){
+        return new SuccessMarker(pendingDir, succeeded);
+    }
+
+    private static class SuccessMarker implements Action<Task>{
+        private final Provider<Directory> pendingDir;
+        private final boolean succeeded;
+
+        private SuccessMarker(Provider<Directory> pendingDir, boolean succeeded){
+            this.pendingDir = pendingDir;
+            this.succeeded = succeeded;
+        }
+
+        @Override
+        public void execute(Task task){
+            var file = pendingDir.get().file(successMarker).getAsFile().toPath();
+            try{
+                if(succeeded){
+                    Files.createDirectories(file.getParent());
+                    Files.write(file, new byte[0]);
+                }else{
+                    Files.deleteIfExists(file);
+                }
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
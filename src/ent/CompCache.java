@@ -0,0 +1,99 @@
+package ent;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+
+/**
+ * Content-addressed cache of fetched vanilla component sources, shared across projects in the Gradle user home. Sources
+ * are stored unprocessed as {@code objects/<sha256>}, and each fetched repository and version has an index listing its
+ * file names and their hashes. Every entry is verified against its hash when read; a missing or corrupt entry
+ * invalidates the whole index.
+ * @author GlFolker
+ */
+public class CompCache{
+    public final Fi root;
+
+    public CompCache(File gradleUserHome){
+        root = new Fi(gradleUserHome).child("caches").child("entity-anno").child("comps");
+    }
+
+    /** @return The cached sources keyed by file name, or {@code null} if absent or corrupt. */
+    public @Nullable OrderedMap<String, String> get(String source, String repository, String version){
+        var index = index(source, repository, version);
+        if(!index.exists()) return null;
+
+        OrderedMap<String, String> out = new OrderedMap<>();
+        for(var line : index.readString("UTF-8").split("\n")){
+            if(line.isEmpty()) continue;
+
+            int split = line.indexOf('\t');
+            if(split == -1) return null;
+
+            var hash = line.substring(split + 1);
+            var object = root.child("objects").child(hash);
+            if(!object.exists()) return null;
+
+            var bytes = object.readBytes();
+            if(!hash(bytes).equals(hash)) return null;
+
+            out.put(line.substring(0, split), new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        return out.isEmpty() ? null : out;
+    }
+
+    /** Stores the sources, keyed by file name. Both objects and the index are written atomically. */
+    public void put(String source, String repository, String version, OrderedMap<String, String> sources){
+        var index = new StringBuilder();
+        for(var e : sources){
+            var bytes = e.value.getBytes(StandardCharsets.UTF_8);
+            var hash = hash(bytes);
+
+            var object = root.child("objects").child(hash);
+            if(!object.exists()) write(object, bytes);
+
+            index.append(e.key).append('\t').append(hash).append('\n');
+        }
+
+        write(index(source, repository, version), index.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected Fi index(String source, String repository, String version){
+        return root.child("index").child(source).child(repository).child(version.replaceAll("[^A-Za-z0-9._-]", "_") + ".index");
+    }
+
+    protected static void write(Fi file, byte[] bytes){
+        file.parent().mkdirs();
+
+        var temp = file.sibling(file.name() + "." + Thread.currentThread().getId() + "-" + System.nanoTime() + ".tmp");
+        temp.writeBytes(bytes);
+
+        try{
+            try{
+                Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch(AtomicMoveNotSupportedException e){
+                Files.move(temp.file().toPath(), file.file().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }catch(IOException e){
+            temp.delete();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String hash(byte[] bytes){
+        try{
+            var builder = new StringBuilder(64);
+            for(var b : MessageDigest.getInstance("SHA-256").digest(bytes)) builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+
+            return builder.toString();
+        }catch(NoSuchAlgorithmException e){
+            throw new RuntimeException(e);
+        }
+    }
+}
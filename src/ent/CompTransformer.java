@@ -0,0 +1,80 @@
+package ent;
+
+/**
+ * Single-pass transformer of vanilla component sources into ones processable by the entity annotation processor:
+ * <ul>
+ *     <li>{@code mindustry.entities.comp} is relocated to the fetch package.</li>
+ *     <li>{@code mindustry.annotations.Annotations.*} imports are relocated to {@code ent.anno.Annotations.*}.</li>
+ *     <li>{@code @Component} and {@code @BaseComponent} are replaced with their {@code ent.anno} counterparts.</li>
+ *     <li>{@code @CallSuper}, {@code @Final}, and {@code @EntityDef(...)} are removed.</li>
+ * </ul>
+ * Annotations are matched as whole identifiers, and any line breaks following the replaced ones are collapsed.
+ * @author GlFolker
+ */
+public final class CompTransformer{
+    private static final String
+        compPackage = "mindustry.entities.comp",
+        annoImport = "mindustry.annotations.Annotations.*", entAnnoImport = "ent.anno.Annotations.*";
+
+    private CompTransformer(){
+        throw new AssertionError();
+    }
+
+    public static String transform(String source, String fetchPackage){
+        int length = source.length();
+        var out = new StringBuilder(length + 256);
+
+        for(int i = 0; i < length;){
+            char c = source.charAt(i);
+            if(c == 'm' && source.startsWith(compPackage, i)){
+                out.append(fetchPackage);
+                i += compPackage.length();
+            }else if(c == 'm' && source.startsWith(annoImport, i)){
+                out.append(entAnnoImport);
+                i += annoImport.length();
+            }else if(c == '@'){
+                int start = i + 1, end = start;
+                while(end < length && Character.isJavaIdentifierPart(source.charAt(end))) end++;
+
+                switch(source.substring(start, end)){
+                    case "Component" -> {
+                        if(end < length && source.charAt(end) == '('){
+                            // Vanilla only ever specifies `base = true`.
+                            out.append("@EntityComponent(base = true, vanilla = true)\n");
+                            end = source.lastIndexOf(')', skipLine(source, end) - 1) + 1;
+                        }else{
+                            out.append("@EntityComponent(vanilla = true)\n");
+                        }
+
+                        i = skipBreaks(source, end);
+                    }
+                    case "BaseComponent" -> {
+                        out.append("@EntityBaseComponent\n");
+                        i = skipBreaks(source, end);
+                    }
+                    case "CallSuper", "Final" -> i = skipBreaks(source, end);
+                    case "EntityDef" -> i = skipBreaks(source, skipLine(source, end));
+                    default -> {
+                        out.append(source, i, end);
+                        i = end;
+                    }
+                }
+            }else{
+                out.append(c);
+                i++;
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static int skipLine(String source, int index){
+        int end = source.indexOf('\n', index);
+        return end == -1 ? source.length() : end;
+    }
+
+    private static int skipBreaks(String source, int index){
+        while(index < source.length() && source.charAt(index) == '\n') index++;
+        return index;
+    }
+}
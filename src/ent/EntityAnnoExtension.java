@@ -15,6 +15,27 @@ public interface EntityAnnoExtension{
     Property<String> getMindustryVersion();
     /** @return Whether to use `Anuken/MindustryJitpack` instead of `Anuken/Mindustry`. */
     Property<Boolean> getIsJitpack();
+    /**
+     * @return Where to fetch vanilla components from instead of GitHub: either a local directory containing the
+     * component sources, or the root URL of a stand-in serving the GitHub contents API. Optional.
+     */
+    Property<String> getFetchSource();
+    /**
+     * @return Whether to extract vanilla components from Mindustry's {@code core} sources artifact, resolved through
+     * the project's repositories, instead of fetching them. Optional, defaults to {@code false}.
+     */
+    Property<Boolean> getFetchSourcesJar();
+
+    /**
+     * @return Version of the {@code entity} and {@code downgrader} artifacts registered as annotation processors when
+     * not using KAPT, as per {@link EntityAnnoPlugin#kaptProperty}. Optional, defaults to this plugin's version.
+     */
+    Property<String> getProcessorVersion();
+
+    /** @return Whether to print and render generated sources in parallel. Optional, defaults to {@code false}. */
+    Property<Boolean> getParallel();
+    /** @return Whether to write per-phase timing and memory reports of the processors into {@code build/entityAnno}. Optional, defaults to {@code false}. */
+    Property<Boolean> getReport();
 
     /** @return The location to store entity revision data. */
     Property<File> getRevisionDir();
@@ -1,20 +1,17 @@
 package ent;
 
-import arc.files.*;
-import arc.struct.*;
-import arc.util.*;
-import arc.util.serialization.*;
 import org.gradle.api.*;
 import org.gradle.api.file.*;
 import org.gradle.api.plugins.*;
+import org.gradle.api.tasks.*;
 import org.gradle.api.tasks.bundling.*;
+import org.gradle.api.tasks.compile.*;
 import org.jetbrains.kotlin.gradle.internal.*;
 import org.jetbrains.kotlin.gradle.plugin.*;
 import org.jetbrains.kotlin.gradle.tasks.Kapt;
 import org.jetbrains.kotlin.gradle.tasks.KotlinCompile;
 
-import java.io.*;
-import java.util.concurrent.*;
+import java.util.*;
 
 /**
  * Gradle plugin for creating necessary entity component generation classes.
@@ -22,6 +19,15 @@ import java.util.concurrent.*;
  */
 public class EntityAnnoPlugin implements Plugin<Project>{
     public static final String defMindustryVersion = "v146";
+    /** Maven group of the processor artifacts. */
+    public static final String group = "com.github.GlennFolker.EntityAnno";
+    /**
+     * Gradle property that decides whether the processors run through KAPT, defaulting to {@code true}. If
+     * {@code false}, they're run by plain javac instead and the Kotlin toolchain is never applied, which suits Java-only
+     * mods. It's a property rather than an extension setting, as it decides which plugins are applied, and those have to
+     * be applied while the build script is evaluated.
+     */
+    public static final String kaptProperty = "entityAnno.kapt";
 
     @Override
     public void apply(Project project){
@@ -29,148 +35,162 @@ public class EntityAnnoPlugin implements Plugin<Project>{
         var exts = project.getExtensions();
         var tasks = project.getTasks();
 
-        var props = exts.getByType(ExtraPropertiesExtension.class);
-        // Don't include Kotlin standard libraries, we absolutely do not need those bloats.
-        props.set("kotlin.stdlib.default.dependency", "false");
-
-        // Apply 'java', 'kotlin-jvm', and 'kotlin-kapt' plugins.
+        // Apply 'java', and unless disabled, 'kotlin-jvm' and 'kotlin-kapt' plugins.
+        boolean kapt = project.getProviders().gradleProperty(kaptProperty).map(Boolean::parseBoolean).getOrElse(true);
         plugins.apply("java");
-        plugins.apply(KotlinPluginWrapper.class);
-        plugins.apply(Kapt3GradleSubplugin.class);
+        if(kapt){
+            // Don't include Kotlin standard libraries, we absolutely do not need those bloats.
+            exts.getByType(ExtraPropertiesExtension.class).set("kotlin.stdlib.default.dependency", "false");
+
+            plugins.apply(KotlinPluginWrapper.class);
+            plugins.apply(Kapt3GradleSubplugin.class);
+        }
 
         var ext = exts.create("entityAnno", EntityAnnoExtension.class);
+        ext.getProcessorVersion().convention(project.provider(() -> EntityAnnoPlugin.class.getPackage().getImplementationVersion()));
         ext.getMindustryVersion().convention(defMindustryVersion);
         ext.getIsJitpack().convention(false);
+        ext.getParallel().convention(false);
+        ext.getReport().convention(false);
+        ext.getFetchSourcesJar().convention(false);
+
+        // Mindustry's `core` sources artifact, only resolved if components are extracted from it.
+        var coreSources = project.getConfigurations().create("entityAnnoCoreSources", c -> {
+            c.setTransitive(false);
+            c.setCanBeConsumed(false);
+            c.defaultDependencies(deps -> deps.add(project.getDependencies().create(
+                "com.github.Anuken." + (ext.getIsJitpack().get() ? "MindustryJitpack" : "Mindustry") + ":core:" + ext.getMindustryVersion().get() + ":sources"
+            )));
+        });
 
-        var fetchDir = project.getLayout().getBuildDirectory().dir("fetched");
-        var fetchComps = tasks.create("fetchComps", t -> {
-            t.getInputs().property("version", project.provider(ext.getMindustryVersion()::get));
-            t.getOutputs().dir(fetchDir);
-
-            t.doFirst(tt -> {
-                var dir = fetchDir.get();
-                var dirFi = new Fi(dir.getAsFile());
-                dirFi.emptyDirectory();
-                dirFi.mkdirs();
-
-                var repository = ext.getIsJitpack().get() ? "MindustryJitpack" : "Mindustry";
-                var version = ext.getMindustryVersion().get();
-
-                Queue<Future<?>> fetches = new Queue<>();
-                int[] remaining = {0, 0};
-
-                Http.get("https://api.github.com/repos/Anuken/" + repository + "/contents/core/src/mindustry/entities/comp?ref=" + version)
-                    .timeout(0)
-                    .error(e -> { throw new RuntimeException(e); })
-                    .block(res -> {
-                        var list = Jval.read(res.getResultAsString()).asArray();
-                        remaining[0] = remaining[1] = list.size;
-
-                        var fetchPackage = ext.getFetchPackage().get();
-                        var exec = Threads.executor("EntityAnno-Fetcher", list.size);
-
-                        var loc = new Fi(new File(dir.getAsFile(), ext.getFetchPackage().get().replace('.', '/')));
-                        loc.mkdirs();
-
-                        for(var val : list){
-                            fetches.addLast(exec.submit(() -> Http.get(val.getString("download_url"))
-                                .timeout(0)
-                                .error(e -> { throw new RuntimeException(e); })
-                                .block(comp -> {
-                                    var result = comp.getResultAsString();
-                                    var name = val.getString("name");
-
-                                    // Sanity checks, because this tends to happen to me.
-                                    if(result.trim().replaceAll("\\s+", "").isEmpty()){
-                                        throw new IllegalStateException("Couldn't write `" + name + "`, got an empty string; re-check your connection.");
-                                    }
-
-                                    loc
-                                        .child(name)
-                                        .writeString(procComp(result, fetchPackage), false);
-                                })
-                            ));
-                        }
-
-                        Threads.await(exec);
-                    });
-
-                while(!fetches.isEmpty()){
-                    try{
-                        fetches.removeFirst().get();
-                        remaining[0]--;
-                    }catch(InterruptedException | ExecutionException e){
-                        throw new RuntimeException(e);
-                    }
-                }
-
-                if(remaining[0] != 0) throw new IllegalStateException("Couldn't write all components; found " + remaining[0] + " unwritten.");
-                project.getLogger().lifecycle("Wrote {} components.", remaining[1]);
-            });
+        var layout = project.getLayout();
+        var startParams = project.getGradle().getStartParameter();
+
+        var fetchComps = tasks.register("fetchComps", FetchCompsTask.class, t -> {
+            t.getRepository().set(ext.getIsJitpack().map(jitpack -> jitpack ? "MindustryJitpack" : "Mindustry"));
+            t.getVersion().set(ext.getMindustryVersion());
+            t.getApiUrl().set(ext.getFetchSource().filter(EntityAnnoPlugin::isUrl));
+            t.getLocalSource().set(layout.dir(ext.getFetchSource().filter(s -> !isUrl(s)).map(project::file)));
+            t.getSourcesJar().from(ext.getFetchSourcesJar().map(jar -> jar ? coreSources : project.files()));
+            t.getGradleUserHome().set(project.getGradle().getGradleUserHomeDir());
+            t.getOffline().set(startParams.isOffline());
+            t.getRefresh().set(startParams.isRefreshDependencies());
+            t.getOutputDir().set(layout.getBuildDirectory().dir("fetched-raw"));
         });
 
-        tasks.create("procComps", t -> t.doFirst(tt -> {
-            var fetchPackage = ext.getFetchPackage().get();
-            var files = new Fi(new File(fetchDir.get().getAsFile(), fetchPackage.replace('.', '/'))).list();
-            for(var file : files){
-                if(!file.extEquals("java")) continue;
-                file.writeString(procComp(file.readString("UTF-8"), fetchPackage), false, "UTF-8");
-            }
-
-            if(files.length == 0){
-                project.getLogger().warn("No fetched component files found. Either run `fetchComps`, or manually copy the files and run this task again.");
-            }else{
-                project.getLogger().lifecycle("Processed {} components.", files.length);
-            }
-        }));
-
-        project.afterEvaluate(p -> {
-            // Configure KAPT extension and add annotation processor options.
-            var kaptExt = exts.getByType(KaptExtension.class);
-            kaptExt.setKeepJavacAnnotationProcessors(true);
-            kaptExt.arguments(args -> {
-                args.arg("modName", ext.getModName().get());
-                args.arg("genPackage", ext.getGenPackage().get());
-                args.arg("fetchPackage", ext.getFetchPackage().get());
-                args.arg("revisionDir", ext.getRevisionDir().get().getAbsolutePath());
-                return null;
-            });
+        var procComps = tasks.register("procComps", ProcCompsTask.class, t -> {
+            t.getRawDir().set(fetchComps.flatMap(FetchCompsTask::getOutputDir));
+            t.getFetchPackage().set(ext.getFetchPackage());
+            t.getOutputDir().set(layout.getBuildDirectory().dir("fetched"));
+        });
 
-            // Add fetched sources as KAPT input, and enable compile avoidance.
-            tasks.withType(Kapt.class, task -> {
-                task.getInputs().files(fetchComps);
-                task.getIncludeCompileClasspath().set(false);
-            });
+        var options = project.getObjects().newInstance(ProcessorOptions.class);
+        options.getModName().set(ext.getModName());
+        options.getGenPackage().set(ext.getGenPackage());
+        options.getFetchPackage().set(ext.getFetchPackage());
+        options.getParallel().set(ext.getParallel());
+
+        var paths = project.getObjects().newInstance(ProcessorPaths.class);
+        paths.getRevisionDir().set(layout.dir(ext.getRevisionDir()));
+        paths.getPendingRevisionDir().set(layout.getBuildDirectory().dir("pendingRevisions"));
+        paths.getCacheDir().set(layout.getBuildDirectory().dir("entityAnnoCache"));
+        paths.getReportDir().set(ext.getReport().filter(report -> report).flatMap(report -> layout.getBuildDirectory().dir("entityAnno")));
+
+        // The processors never write into the revision directory themselves; new revisions are committed after compiling.
+        var commitRevisions = tasks.register("commitRevisions", CommitRevisionsTask.class, t -> {
+            t.getPendingDir().set(paths.getPendingRevisionDir());
+            t.getRevisionDir().set(paths.getRevisionDir());
+        });
 
-            // Add `fetchDir` as Java source sets.
-            exts.getByType(JavaPluginExtension.class)
-                .getSourceSets().getByName("main")
-                .getJava().srcDirs(fetchDir);
-
-            // Exclude fetched and generation source classes.
-            tasks.withType(Jar.class, task -> {
-                task.setDuplicatesStrategy(DuplicatesStrategy.EXCLUDE);
-                task.exclude(
-                    ext.getFetchPackage().get().replace('.', '/') + "/**",
-                    ext.getGenSrcPackage().get().replace('.', '/') + "/**"
-                );
+        if(kapt){
+            applyKapt(project, ext, procComps, paths, commitRevisions);
+        }else{
+            applyJavac(project, ext, procComps, options, paths, commitRevisions);
+        }
+
+        // Add processed components as Java source sets.
+        exts.getByType(JavaPluginExtension.class)
+            .getSourceSets().getByName("main")
+            .getJava().srcDir(procComps.flatMap(ProcCompsTask::getOutputDir));
+
+        // Exclude fetched and generation source classes.
+        var excludes = ext.getFetchPackage().zip(ext.getGenSrcPackage(), (fetch, genSrc) -> List.of(
+            fetch.replace('.', '/'),
+            genSrc.replace('.', '/')
+        ));
+
+        tasks.withType(Jar.class).configureEach(task -> {
+            task.setDuplicatesStrategy(DuplicatesStrategy.EXCLUDE);
+            task.exclude(e -> {
+                var path = e.getRelativePath().getPathString();
+                for(var dir : excludes.get()) if(path.equals(dir) || path.startsWith(dir + "/")) return true;
+
+                return false;
             });
+        });
+    }
+
+    /** Runs the processors through KAPT, whose plugins must have been applied. */
+    protected void applyKapt(Project project, EntityAnnoExtension ext, TaskProvider<ProcCompsTask> procComps, ProcessorPaths paths, TaskProvider<CommitRevisionsTask> commitRevisions){
+        var exts = project.getExtensions();
+        var tasks = project.getTasks();
+
+        // Configure KAPT extension and add annotation processor options. These are only evaluated once KAPT tasks are configured.
+        var kaptExt = exts.getByType(KaptExtension.class);
+        kaptExt.setKeepJavacAnnotationProcessors(true);
+        kaptExt.arguments(args -> {
+            args.arg("modName", ext.getModName().get());
+            args.arg("genPackage", ext.getGenPackage().get());
+            args.arg("fetchPackage", ext.getFetchPackage().get());
+            args.arg("parallel", ext.getParallel().get().toString());
+            return null;
+        });
+
+        // Add processed sources as KAPT input, and enable compile avoidance.
+        tasks.withType(Kapt.class).configureEach(task -> {
+            task.getInputs().files(procComps);
+            task.getIncludeCompileClasspath().set(false);
+            task.getAnnotationProcessorOptionProviders().add(List.of(paths));
+            task.doFirst(CommitRevisionsTask.successMarker(paths.getPendingRevisionDir(), false));
+            task.doLast(CommitRevisionsTask.successMarker(paths.getPendingRevisionDir(), true));
+            task.finalizedBy(commitRevisions);
+        });
+
+        commitRevisions.configure(t -> t.mustRunAfter(tasks.withType(Kapt.class)));
 
-            // Prevent running these tasks to speed up compile-time.
-            tasks.getByPath("checkKotlinGradlePluginConfigurationErrors").onlyIf(spec -> false);
-            tasks.withType(KotlinCompile.class, t -> t.onlyIf(spec -> false));
+        // Prevent running these tasks to speed up compile-time.
+        tasks.configureEach(t -> {
+            if(t.getName().equals("checkKotlinGradlePluginConfigurationErrors")) t.onlyIf(spec -> false);
         });
+        tasks.withType(KotlinCompile.class).configureEach(t -> t.onlyIf(spec -> false));
+    }
+
+    /** Registers the processors and the Downgrader on the plain {@code annotationProcessor} configuration, passing options as compiler arguments. */
+    protected void applyJavac(Project project, EntityAnnoExtension ext, TaskProvider<ProcCompsTask> procComps, ProcessorOptions options, ProcessorPaths paths, TaskProvider<CommitRevisionsTask> commitRevisions){
+        var deps = project.getDependencies();
+        for(var module : List.of("entity", "downgrader")){
+            deps.addProvider(JavaPlugin.ANNOTATION_PROCESSOR_CONFIGURATION_NAME, ext.getProcessorVersion().map(version -> group + ":" + module + ":" + version));
+        }
+
+        var compileJava = project.getTasks().named(JavaPlugin.COMPILE_JAVA_TASK_NAME, JavaCompile.class);
+        compileJava.configure(task -> {
+            task.getInputs().files(procComps);
+            task.getOptions().getCompilerArgumentProviders().add(options);
+            task.getOptions().getCompilerArgumentProviders().add(paths);
+            task.doFirst(CommitRevisionsTask.successMarker(paths.getPendingRevisionDir(), false));
+            task.doLast(CommitRevisionsTask.successMarker(paths.getPendingRevisionDir(), true));
+            task.finalizedBy(commitRevisions);
+        });
+
+        commitRevisions.configure(t -> t.mustRunAfter(compileJava));
+    }
+
+    private static boolean isUrl(String source){
+        return source.startsWith("http://") || source.startsWith("https://");
     }
 
+    /** @see CompTransformer#transform(String, String) */
     public static String procComp(String source, String fetchPackage){
-        return source
-            .replace("mindustry.entities.comp", fetchPackage)
-            .replace("mindustry.annotations.Annotations.*", "ent.anno.Annotations.*")
-            .replaceAll("@Component\\((base = true|.)+\\)\n*", "@EntityComponent(base = true, vanilla = true)\n")
-            .replaceAll("@Component\n*", "@EntityComponent(vanilla = true)\n")
-            .replaceAll("@BaseComponent\n*", "@EntityBaseComponent\n")
-            .replaceAll("@CallSuper\n*", "")
-            .replaceAll("@Final\n*", "")
-            .replaceAll("@EntityDef\\(*.*\\)*\n*", "");
+        return CompTransformer.transform(source, fetchPackage);
     }
 }
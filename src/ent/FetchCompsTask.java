@@ -0,0 +1,201 @@
+package ent;
+
+import arc.files.*;
+import arc.struct.*;
+import arc.util.*;
+import arc.util.serialization.*;
+import org.gradle.api.*;
+import org.gradle.api.file.*;
+import org.gradle.api.provider.*;
+import org.gradle.api.tasks.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Fetches raw vanilla component sources, from the first available of:
+ * <ol>
+ *     <li>Mindustry's {@code core} sources JAR, if {@link #getSourcesJar()} isn't empty.</li>
+ *     <li>A local directory, if {@link #getLocalSource()} is present.</li>
+ *     <li>The {@link CompCache} in the Gradle user home.</li>
+ *     <li>The GitHub contents API, or the stand-in at {@link #getApiUrl()}.</li>
+ * </ol>
+ * @author GlFolker
+ */
+@CacheableTask
+public abstract class FetchCompsTask extends DefaultTask{
+    /** @return Either {@code Mindustry} or {@code MindustryJitpack}. */
+    @Input
+    public abstract Property<String> getRepository();
+
+    /** @return The Mindustry version to fetch the components of. */
+    @Input
+    public abstract Property<String> getVersion();
+
+    /** @return Root URL of a stand-in for the GitHub API. Optional. */
+    @Input
+    @Optional
+    public abstract Property<String> getApiUrl();
+
+    /** @return Local directory containing the component sources. Optional. */
+    @InputDirectory
+    @Optional
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getLocalSource();
+
+    /** @return Mindustry's {@code core} sources JAR, or empty if components aren't extracted from it. */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract ConfigurableFileCollection getSourcesJar();
+
+    @Internal
+    public abstract DirectoryProperty getGradleUserHome();
+
+    @Internal
+    public abstract Property<Boolean> getOffline();
+
+    @Internal
+    public abstract Property<Boolean> getRefresh();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDir();
+
+    @TaskAction
+    public void fetch(){
+        var dirFi = new Fi(getOutputDir().get().getAsFile());
+        dirFi.emptyDirectory();
+        dirFi.mkdirs();
+
+        if(!getSourcesJar().isEmpty()){
+            int count = extractComps(getSourcesJar().getSingleFile(), dirFi);
+            getLogger().lifecycle("Extracted {} components.", count);
+            return;
+        }
+
+        var repository = getRepository().get();
+        var version = getVersion().get();
+
+        OrderedMap<String, String> sources;
+        if(getLocalSource().isPresent()){
+            sources = readComps(getLocalSource().get().getAsFile());
+        }else{
+            var source = getApiUrl().getOrNull();
+            var api = source == null ? "https://api.github.com" : source.endsWith("/") ? source.substring(0, source.length() - 1) : source;
+            var key = source == null ? "github" : "http-" + CompCache.hash(api.getBytes(StandardCharsets.UTF_8)).substring(0, 12);
+
+            var cache = new CompCache(getGradleUserHome().get().getAsFile());
+            sources = getRefresh().get() ? null : cache.get(key, repository, version);
+
+            if(sources == null){
+                if(getOffline().get()) throw new GradleException("No cached components for " + repository + "@" + version + "; run `fetchComps` once without `--offline`.");
+
+                sources = downloadComps(api, repository, version);
+                cache.put(key, repository, version, sources);
+            }else{
+                getLogger().info("Using cached components for {}@{}.", repository, version);
+            }
+        }
+
+        for(var e : sources) dirFi.child(e.key).writeString(e.value, false, "UTF-8");
+        getLogger().lifecycle("Wrote {} components.", sources.size);
+    }
+
+    /**
+     * Streams the component sources out of Mindustry's {@code core} sources JAR into the given directory.
+     * @return The amount of extracted components.
+     */
+    public static int extractComps(File jar, Fi dest){
+        var prefix = "mindustry/entities/comp/";
+
+        int count = 0;
+        try(var in = new ZipInputStream(new BufferedInputStream(new FileInputStream(jar)))){
+            for(var entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()){
+                var name = entry.getName();
+                if(entry.isDirectory() || !name.startsWith(prefix) || !name.endsWith(".java") || name.indexOf('/', prefix.length()) != -1) continue;
+
+                try(var out = dest.child(name.substring(prefix.length())).write()){
+                    in.transferTo(out);
+                }
+                count++;
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+
+        if(count == 0) throw new GradleException("No component sources found in `" + jar.getAbsolutePath() + "`.");
+        return count;
+    }
+
+    /** @return Component sources from a local directory, keyed by file name. */
+    public static OrderedMap<String, String> readComps(File dir){
+        var files = new Fi(dir).list();
+        if(files.length == 0) throw new GradleException("No component sources found in `" + dir.getAbsolutePath() + "`.");
+
+        Seq<Fi> comps = Seq.with(files).select(f -> f.extEquals("java")).sort(Structs.comparing(Fi::name));
+
+        OrderedMap<String, String> out = new OrderedMap<>();
+        for(var comp : comps) out.put(comp.name(), comp.readString("UTF-8"));
+
+        return out;
+    }
+
+    /**
+     * Downloads component sources through the GitHub contents API, or a stand-in serving the same endpoints.
+     * @return The sources keyed by file name.
+     */
+    public static OrderedMap<String, String> downloadComps(String api, String repository, String version){
+        ObjectMap<String, String> fetched = new ObjectMap<>();
+
+        Queue<Future<?>> fetches = new Queue<>();
+        int[] remaining = {0, 0};
+
+        Http.get(api + "/repos/Anuken/" + repository + "/contents/core/src/mindustry/entities/comp?ref=" + version)
+            .timeout(0)
+            .error(e -> { throw new RuntimeException(e); })
+            .block(res -> {
+                var list = Jval.read(res.getResultAsString()).asArray();
+                remaining[0] = remaining[1] = list.size;
+
+                var exec = Threads.executor("EntityAnno-Fetcher", list.size);
+                for(var val : list){
+                    fetches.addLast(exec.submit(() -> Http.get(val.getString("download_url"))
+                        .timeout(0)
+                        .error(e -> { throw new RuntimeException(e); })
+                        .block(comp -> {
+                            var result = comp.getResultAsString();
+                            var name = val.getString("name");
+
+                            // Sanity checks, because this tends to happen to me.
+                            if(result.trim().replaceAll("\\s+", "").isEmpty()){
+                                throw new IllegalStateException("Couldn't write `" + name + "`, got an empty string; re-check your connection.");
+                            }
+
+                            synchronized(fetched){
+                                fetched.put(name, result);
+                            }
+                        })
+                    ));
+                }
+
+                Threads.await(exec);
+            });
+
+        while(!fetches.isEmpty()){
+            try{
+                fetches.removeFirst().get();
+                remaining[0]--;
+            }catch(InterruptedException | ExecutionException e){
+                throw new RuntimeException(e);
+            }
+        }
+
+        if(remaining[0] != 0) throw new IllegalStateException("Couldn't fetch all components; found " + remaining[0] + " unfetched.");
+
+        OrderedMap<String, String> out = new OrderedMap<>();
+        for(var name : fetched.keys().toSeq().sort()) out.put(name, fetched.get(name));
+
+        return out;
+    }
+}
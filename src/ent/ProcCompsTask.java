@@ -0,0 +1,94 @@
+package ent;
+
+import arc.files.*;
+import org.gradle.api.*;
+import org.gradle.api.file.*;
+import org.gradle.api.provider.*;
+import org.gradle.api.tasks.*;
+import org.gradle.work.*;
+import org.gradle.workers.*;
+
+import javax.inject.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * Processes fetched vanilla component sources with {@link CompTransformer} into the fetch package. Only added or
+ * modified sources are processed, in parallel through the Worker API; outputs of removed sources are deleted.
+ * @author GlFolker
+ */
+@CacheableTask
+public abstract class ProcCompsTask extends DefaultTask{
+    /** @return The directory containing raw component sources, as fetched from vanilla. */
+    @Incremental
+    @SkipWhenEmpty
+    @IgnoreEmptyDirectories
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @InputDirectory
+    public abstract DirectoryProperty getRawDir();
+
+    /** @return The package to relocate the components to. */
+    @Input
+    public abstract Property<String> getFetchPackage();
+
+    /** @return The source root to write the processed components to. */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDir();
+
+    @Inject
+    public abstract WorkerExecutor getWorkerExecutor();
+
+    @TaskAction
+    public void process(InputChanges changes){
+        var fetchPackage = getFetchPackage().get();
+        var dest = getOutputDir().get().dir(fetchPackage.replace('.', '/')).getAsFile();
+
+        if(!changes.isIncremental()) new Fi(getOutputDir().get().getAsFile()).emptyDirectory();
+
+        var queue = getWorkerExecutor().noIsolation();
+        int processed = 0, removed = 0;
+
+        for(var change : changes.getFileChanges(getRawDir())){
+            if(change.getFileType() == FileType.DIRECTORY || !change.getFile().getName().endsWith(".java")) continue;
+
+            var target = new File(dest, change.getFile().getName());
+            if(change.getChangeType() == ChangeType.REMOVED){
+                target.delete();
+                removed++;
+            }else{
+                queue.submit(ProcComp.class, params -> {
+                    params.getSource().set(change.getFile());
+                    params.getTarget().set(target);
+                    params.getFetchPackage().set(fetchPackage);
+                });
+                processed++;
+            }
+        }
+
+        queue.await();
+        getLogger().lifecycle("Processed {} components, removed {}.", processed, removed);
+    }
+
+    public interface ProcCompParams extends WorkParameters{
+        RegularFileProperty getSource();
+        RegularFileProperty getTarget();
+        Property<String> getFetchPackage();
+    }
+
+    public static abstract class ProcComp implements WorkAction<ProcCompParams>{
+        @Override
+        public void execute(){
+            var params = getParameters();
+            var source = params.getSource().get().getAsFile().toPath();
+            var target = params.getTarget().get().getAsFile().toPath();
+
+            try{
+                Files.createDirectories(target.getParent());
+                Files.writeString(target, CompTransformer.transform(Files.readString(source, StandardCharsets.UTF_8), params.getFetchPackage().get()), StandardCharsets.UTF_8);
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ent;
+
+import org.gradle.api.provider.*;
+import org.gradle.api.tasks.*;
+import org.gradle.process.*;
+
+import java.util.*;
+
+/**
+ * Passes the annotation processors' plain options as {@code -A} compiler arguments, for when they're run by javac
+ * directly instead of through KAPT.
+ * @author GlFolker
+ */
+public abstract class ProcessorOptions implements CommandLineArgumentProvider{
+    @Input
+    public abstract Property<String> getModName();
+
+    @Input
+    public abstract Property<String> getGenPackage();
+
+    @Input
+    public abstract Property<String> getFetchPackage();
+
+    @Input
+    public abstract Property<Boolean> getParallel();
+
+    @Override
+    public Iterable<String> asArguments(){
+        return List.of(
+            "-AmodName=" + getModName().get(),
+            "-AgenPackage=" + getGenPackage().get(),
+            "-AfetchPackage=" + getFetchPackage().get(),
+            "-Aparallel=" + getParallel().get()
+        );
+    }
+}
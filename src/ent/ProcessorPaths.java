@@ -0,0 +1,44 @@
+package ent;
+
+import org.gradle.api.file.*;
+import org.gradle.api.tasks.*;
+import org.gradle.process.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes file system locations to the annotation processors. They're declared with relative path sensitivity instead
+ * of as plain string options, so that absolute paths don't end up in KAPT's cache key.
+ * @author GlFolker
+ */
+public abstract class ProcessorPaths implements CommandLineArgumentProvider{
+    /** @return The location to store entity revision data. */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getRevisionDir();
+
+    /** @return The location to write revisions added during processing to, committed afterwards by {@link CommitRevisionsTask}. */
+    @OutputDirectory
+    public abstract DirectoryProperty getPendingRevisionDir();
+
+    /** @return The location of the generation and {@code TypeIO} caches, which are only ever valid for this build. */
+    @LocalState
+    public abstract DirectoryProperty getCacheDir();
+
+    /** @return The location to write processing reports to, if enabled. */
+    @OutputDirectory
+    @Optional
+    public abstract DirectoryProperty getReportDir();
+
+    @Override
+    public Iterable<String> asArguments(){
+        List<String> args = new ArrayList<>();
+        args.add("-ArevisionDir=" + getRevisionDir().get().getAsFile().getAbsolutePath());
+        args.add("-ApendingRevisionDir=" + getPendingRevisionDir().get().getAsFile().getAbsolutePath());
+        args.add("-AcacheDir=" + getCacheDir().get().getAsFile().getAbsolutePath());
+        if(getReportDir().isPresent()) args.add("-AreportDir=" + getReportDir().get().getAsFile().getAbsolutePath());
+
+        return args;
+    }
+}